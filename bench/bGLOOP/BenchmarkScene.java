@@ -0,0 +1,23 @@
+package bGLOOP;
+
+/* Shared setup of the benchmarks. Objects need a camera and with it a
+ * renderer, so one is created per benchmark JVM. bench/.bgloop switches
+ * it to offscreen rendering on demand, so the render thread is idle while
+ * the benchmarks measure the user thread.
+ */
+final class BenchmarkScene {
+	private static GLKamera camera;
+
+	private BenchmarkScene() {
+	}
+
+	static synchronized GLKamera camera() {
+		if (camera == null)
+			camera = new GLKamera(320, 240);
+		return camera;
+	}
+
+	static GLRenderer renderer() {
+		return camera().associatedRenderer;
+	}
+}
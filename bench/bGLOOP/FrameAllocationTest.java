@@ -0,0 +1,184 @@
+package bGLOOP;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.jogamp.opengl.GLAutoDrawable;
+import com.jogamp.opengl.GLEventListener;
+
+import bGLOOP.GLObjekt.Rendermodus;
+
+/* Checks that rendering a static scene allocates nothing once it has
+ * warmed up. The scene is rendered in an offscreen window; two listeners
+ * around the renderer read the allocation counter of the GL thread before
+ * and after GLRenderer.display, so only the frame itself is measured and
+ * not the animator or JOGL. Every frame is forced to be rendered.
+ *
+ * Started by "ant bench.alloc", exits with 1 if any measured frame
+ * allocated. Arguments:
+ *   --mode m           GLU, GL or VBOGL, default VBOGL
+ *   --frames n         measured frames, default 500
+ *   --warmup n         frames rendered before measuring, default 2000, so
+ *                      uploads are done and the JIT has compiled the frame
+ *   --timeout s        seconds the run may take, default 300
+ */
+public final class FrameAllocationTest {
+	private final static com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	private final GLRenderer renderer;
+	private final int frames, warmup;
+	private final long[] allocated;
+	private final CountDownLatch done = new CountDownLatch(1);
+	// bytes the counter itself allocates per reading, see calibrate
+	private long overhead;
+	private long start;
+	private int seen = 0, measured = 0;
+
+	private FrameAllocationTest(GLRenderer pRenderer, int pFrames, int pWarmup) {
+		renderer = pRenderer;
+		frames = pFrames;
+		warmup = pWarmup;
+		allocated = new long[pFrames];
+	}
+
+	public static void main(String[] args) throws Exception {
+		String mode = "VBOGL";
+		int frames = 500, warmup = 2000, timeout = 300;
+		for (int i = 0; i < args.length; ++i) {
+			String value = i + 1 < args.length ? args[i + 1] : null;
+			switch (args[i]) {
+			case "--mode":
+				mode = value.trim().toUpperCase(Locale.ROOT);
+				break;
+			case "--frames":
+				frames = Integer.parseInt(value);
+				break;
+			case "--warmup":
+				warmup = Integer.parseInt(value);
+				break;
+			case "--timeout":
+				timeout = Integer.parseInt(value);
+				break;
+			default:
+				throw new IllegalArgumentException("unknown argument " + args[i]);
+			}
+			++i;
+		}
+		if (!THREADS.isThreadAllocatedMemorySupported())
+			fail("the JVM does not count allocated bytes per thread");
+		THREADS.setThreadAllocatedMemoryEnabled(true);
+
+		GLKamera cam = new GLKamera(640, 480);
+		cam.getWconf().globalObjectRenderMode = Rendermodus.valueOf("RENDER_" + mode);
+		buildScene();
+
+		FrameAllocationTest test = new FrameAllocationTest(cam.associatedRenderer, frames, warmup);
+		GLAutoDrawable drawable = cam.associatedRenderer.getWindow().getAutoDrawable();
+		drawable.addGLEventListener(0, test.before);
+		drawable.addGLEventListener(test.after);
+		// the listeners keep the frames coming from now on
+		cam.associatedRenderer.scheduleRender();
+		if (!test.done.await(timeout, TimeUnit.SECONDS))
+			fail("timeout after " + test.seen + " frames");
+		drawable.removeGLEventListener(test.before);
+		drawable.removeGLEventListener(test.after);
+		System.exit(test.report(mode) ? 0 : 1);
+	}
+
+	/* A bit of everything that is drawn without user code: a light,
+	 * spheres, boxes, cylinders, a transparent object and a text.
+	 */
+	private static void buildScene() {
+		new GLLicht(0, 500, 500);
+		for (int i = 0; i < 100; ++i) {
+			double x = 40 * (i % 10) - 180, y = 40 * (i / 10) - 180;
+			GLObjekt o;
+			switch (i % 3) {
+			case 0:
+				o = new GLKugel(x, y, 0, 15);
+				break;
+			case 1:
+				o = new GLQuader(x, y, 0, 20, 20, 20);
+				break;
+			default:
+				o = new GLZylinder(x, y, 0, 10, 25);
+			}
+			if (i % 10 == 0)
+				o.setzeMaterial(GLMaterial.ROTGLAS);
+		}
+		new GLText(0, 220, 0, "bGLOOP");
+	}
+
+	/* Reading the counter may allocate itself, e.g. an array on older
+	 * JVMs. Two readings in a row tell how much, which is subtracted from
+	 * every frame.
+	 */
+	private void calibrate() {
+		long a = allocatedBytes(), b = allocatedBytes();
+		overhead = b - a;
+	}
+
+	private static long allocatedBytes() {
+		return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private final GLEventListener before = new Probe() {
+		@Override
+		public void display(GLAutoDrawable pDrawable) {
+			if (seen == warmup)
+				calibrate();
+			// a static scene would not be rendered again otherwise
+			renderer.scheduleRender();
+			start = allocatedBytes();
+		}
+	};
+
+	private final GLEventListener after = new Probe() {
+		@Override
+		public void display(GLAutoDrawable pDrawable) {
+			long end = allocatedBytes();
+			if (seen++ < warmup || measured == frames)
+				return;
+			allocated[measured] = end - start - overhead;
+			if (++measured == frames)
+				done.countDown();
+		}
+	};
+
+	private boolean report(String pMode) {
+		int allocating = 0;
+		long max = 0, total = 0;
+		for (long a : allocated)
+			if (a > 0) {
+				allocating++;
+				total += a;
+				max = Math.max(max, a);
+			}
+		System.out.println(String.format(Locale.ROOT,
+				"mode %s: %d of %d frames allocated, %d bytes in total, at most %d bytes in one frame", pMode,
+				allocating, frames, total, max));
+		return allocating == 0;
+	}
+
+	private static void fail(String pMessage) {
+		System.out.println(pMessage);
+		System.exit(1);
+	}
+
+	private static abstract class Probe implements GLEventListener {
+		@Override
+		public void init(GLAutoDrawable pDrawable) {
+		}
+
+		@Override
+		public void dispose(GLAutoDrawable pDrawable) {
+		}
+
+		@Override
+		public void reshape(GLAutoDrawable pDrawable, int x, int y, int width, int height) {
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package bGLOOP;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bGLOOP.mesh.Parse;
+import bGLOOP.mesh.builder.Build;
+
+/* Parsing of Wavefront OBJ files: the airboat of the mesh example and a
+ * generated grid of about a million triangles. Also building the vertex
+ * and index data of the parsed airboat for its VBO.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MeshParseBenchmark {
+	// grid of GRID x GRID quads, two triangles each
+	private final static int GRID = 708;
+
+	private File airboat, grid;
+	private GLMesh airboatMesh;
+
+	@Setup
+	public void setup() throws IOException {
+		airboat = new File(System.getProperty("bgloop.bench.airboat", "../examples/5_Mesh/airboat.obj"));
+		if (!airboat.canRead())
+			throw new IOException("mesh not found: " + airboat.getAbsolutePath());
+		BenchmarkScene.camera();
+		airboatMesh = new GLMesh(airboat.getPath());
+
+		grid = File.createTempFile("bgloop-grid", ".obj");
+		try (BufferedWriter w = new BufferedWriter(new FileWriter(grid))) {
+			for (int i = 0; i <= GRID; ++i)
+				for (int j = 0; j <= GRID; ++j)
+					w.append("v ").append(Integer.toString(i)).append(" 0 ").append(Integer.toString(j))
+							.append('\n');
+			for (int i = 0, a; i < GRID; ++i)
+				for (int j = 0; j < GRID; ++j) {
+					// OBJ indices start at 1
+					a = i * (GRID + 1) + j + 1;
+					w.append("f ").append(Integer.toString(a)).append(' ').append(Integer.toString(a + 1))
+							.append(' ').append(Integer.toString(a + GRID + 1)).append('\n');
+					w.append("f ").append(Integer.toString(a + 1)).append(' ')
+							.append(Integer.toString(a + GRID + 2)).append(' ')
+							.append(Integer.toString(a + GRID + 1)).append('\n');
+				}
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		grid.delete();
+	}
+
+	@Benchmark
+	public Build parseAirboat() throws IOException {
+		Build b = new Build();
+		new Parse(b, airboat);
+		return b;
+	}
+
+	@Benchmark
+	@Warmup(iterations = 1)
+	@Measurement(iterations = 3)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public Build parseMillionFaces() throws IOException {
+		Build b = new Build();
+		new Parse(b, grid);
+		return b;
+	}
+
+	@Benchmark
+	public Tessellation tessellateAirboat() {
+		return airboatMesh.tessellate();
+	}
+}
@@ -0,0 +1,61 @@
+package bGLOOP;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* Removing an object from the renderer and adding it again, in scenes
+ * of different size. The removed object is picked round robin, so its
+ * position in the render list varies. The octree is updated as at the
+ * start of a frame, so taking the object back into it is measured too.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderMapBenchmark {
+	@Param({ "1000", "10000", "100000" })
+	public int objects;
+
+	private GLRenderer renderer;
+	// untextured, so all of them live under the NULL_TEXTURE
+	private GLKugel[] scene;
+	private int next = 0;
+
+	@Setup
+	public void setup() {
+		renderer = BenchmarkScene.renderer();
+		scene = new GLKugel[objects];
+		for (int i = 0; i < objects; ++i)
+			scene[i] = new GLKugel(i % 100, i / 100 % 100, i / 10000, 0.5);
+	}
+
+	@TearDown
+	public void tearDown() {
+		for (GLKugel k : scene)
+			k.loesche();
+	}
+
+	@Benchmark
+	public GLKugel removeAndAdd() {
+		GLKugel k = scene[next];
+		next = (next + 1) % objects;
+		renderer.removeObjectFromRenderMap(GLTextur.NULL_TEXTURE, k);
+		renderer.addObjectToRenderMap(GLTextur.NULL_TEXTURE, k);
+		renderer.getSpatialIndex().update();
+		return k;
+	}
+}
@@ -0,0 +1,465 @@
+package bGLOOP;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GLContext;
+
+import bGLOOP.GLObjekt.Rendermodus;
+import bGLOOP.mesh.Parse;
+import bGLOOP.mesh.builder.Build;
+
+/* End-to-end render benchmark. Builds standard scenes in an offscreen
+ * window, animates them for a fixed number of frames and reports frame
+ * time percentiles and throughput per scene and render mode as JSON.
+ *
+ * Every scene and render mode runs in a JVM of its own, so the runs do not
+ * share JIT state, GL objects or garbage. The runner started by
+ * "ant bench.scenes" forks these children and collects the single result
+ * line each of them prints. Arguments:
+ *   --scenes a,b,...   scenes to run, default all (see Scene)
+ *   --modes a,b,...    GLU, GL and/or VBOGL, default all three
+ *   --frames n         measured frames, default 300
+ *   --warmup n         frames rendered before measuring, default 60
+ *   --timeout s        seconds a single run may take, default 600
+ *   --out file         result file, default scene-results.json
+ *
+ * The animation is driven by the frame number, not by the elapsed time,
+ * so every run renders exactly the same sequence of images.
+ */
+public final class SceneBenchmark {
+	private final static String RESULT_PREFIX = "RESULT ";
+	// spacing of the object grids
+	private final static float GRID = 30;
+	// tessellation of spheres and the other round shapes; the default of
+	// the configuration would make 100k spheres unbearable for software GL
+	private final static int QUALITY = 16;
+
+	enum Scene {
+		SPHERES_1K("spheres-1k", 1000), SPHERES_10K("spheres-10k", 10000), SPHERES_100K("spheres-100k",
+				100000), MIXED("mixed", 1000), MESHES("meshes", 16), LABELS("labels", 1000);
+
+		final String id;
+		final int count;
+
+		Scene(String pId, int pCount) {
+			id = pId;
+			count = pCount;
+		}
+
+		static Scene byId(String pId) {
+			for (Scene s : values())
+				if (s.id.equals(pId))
+					return s;
+			throw new IllegalArgumentException("unknown scene " + pId);
+		}
+	}
+
+	private SceneBenchmark() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0 && "--child".equals(args[0]))
+			runChild(args);
+		else
+			runAll(args);
+	}
+
+	/* ---- runner ---- */
+
+	private static void runAll(String[] args) throws Exception {
+		List<Scene> scenes = new ArrayList<Scene>(Arrays.asList(Scene.values()));
+		List<String> modes = Arrays.asList("GLU", "GL", "VBOGL");
+		int frames = 300, warmup = 60, timeout = 600;
+		String out = "scene-results.json";
+
+		for (int i = 0; i < args.length; ++i) {
+			String value = i + 1 < args.length ? args[i + 1] : null;
+			switch (args[i]) {
+			case "--scenes":
+				scenes.clear();
+				for (String s : value.split(","))
+					scenes.add(Scene.byId(s.trim()));
+				break;
+			case "--modes":
+				modes = new ArrayList<String>();
+				for (String m : value.split(",")) {
+					m = m.trim().toUpperCase(Locale.ROOT);
+					Rendermodus.valueOf("RENDER_" + m);
+					modes.add(m);
+				}
+				break;
+			case "--frames":
+				frames = Integer.parseInt(value);
+				break;
+			case "--warmup":
+				warmup = Integer.parseInt(value);
+				break;
+			case "--timeout":
+				timeout = Integer.parseInt(value);
+				break;
+			case "--out":
+				out = value;
+				break;
+			default:
+				throw new IllegalArgumentException("unknown argument " + args[i]);
+			}
+			++i;
+		}
+
+		List<String> results = new ArrayList<String>();
+		for (Scene s : scenes)
+			for (String m : modes) {
+				System.err.println("scene " + s.id + ", mode " + m);
+				results.add(fork(s, m, frames, warmup, timeout));
+			}
+
+		StringBuilder json = new StringBuilder("{\n");
+		field(json, "frames", frames).append(",\n");
+		field(json, "warmup", warmup).append(",\n");
+		field(json, "java", System.getProperty("java.version")).append(",\n");
+		field(json, "os", System.getProperty("os.name") + " " + System.getProperty("os.arch")).append(",\n");
+		field(json, "cpus", Runtime.getRuntime().availableProcessors()).append(",\n");
+		json.append("\"results\": [\n");
+		for (int i = 0; i < results.size(); ++i)
+			json.append(i == 0 ? "  " : ",\n  ").append(results.get(i));
+		json.append("\n]\n}\n");
+		Files.write(new File(out).toPath(), json.toString().getBytes(StandardCharsets.UTF_8));
+		System.err.println("results written to " + new File(out).getAbsolutePath());
+	}
+
+	private static String fork(Scene pScene, String pMode, int pFrames, int pWarmup, int pTimeout)
+			throws IOException, InterruptedException {
+		List<String> cmd = new ArrayList<String>();
+		cmd.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+		// heap and GC settings of the runner apply to the children as well
+		cmd.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+		cmd.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), SceneBenchmark.class.getName(),
+				"--child", pScene.id, pMode, Integer.toString(pFrames), Integer.toString(pWarmup),
+				Integer.toString(pTimeout)));
+		Process p = new ProcessBuilder(cmd).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+
+		String result = null, line;
+		try (BufferedReader r = new BufferedReader(
+				new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
+			while ((line = r.readLine()) != null)
+				if (line.startsWith(RESULT_PREFIX))
+					result = line.substring(RESULT_PREFIX.length());
+				else
+					System.out.println(line);
+		}
+		int exit = p.waitFor();
+		if (result != null)
+			return result;
+		StringBuilder failed = new StringBuilder("{");
+		header(failed, pScene, pMode).append(", ");
+		field(failed, "error", "run exited with code " + exit + " without result");
+		return failed.append('}').toString();
+	}
+
+	/* ---- single run ---- */
+
+	private static void runChild(String[] args) throws Exception {
+		Scene scene = Scene.byId(args[1]);
+		String mode = args[2];
+		int frames = Integer.parseInt(args[3]), warmup = Integer.parseInt(args[4]);
+		int timeout = Integer.parseInt(args[5]);
+
+		GLKamera cam = new GLKamera(640, 480);
+		cam.getWconf().globalObjectRenderMode = Rendermodus.valueOf("RENDER_" + mode);
+		// the renderer falls back to GLU when VBOs are not supported; that
+		// has happened after the first frame
+		String[] glInfo = new String[2];
+		CountDownLatch initialized = new CountDownLatch(1);
+		Consumer<GLStatistik> first = s -> {
+			if (glInfo[0] == null) {
+				GL gl = GLContext.getCurrentGL();
+				glInfo[0] = gl.glGetString(GL.GL_RENDERER);
+				glInfo[1] = gl.glGetString(GL.GL_VERSION);
+			}
+			initialized.countDown();
+		};
+		cam.beobachteStatistik(first);
+		// the light also asks for the first frame, should the window be
+		// idle already
+		new GLLicht();
+		if (!initialized.await(timeout, TimeUnit.SECONDS))
+			fail(scene, mode, "no frame rendered");
+		cam.entferneStatistikBeobachter(first);
+		String effectiveMode = cam.getWconf().globalObjectRenderMode.name().substring("RENDER_".length());
+
+		long buildStart = System.nanoTime();
+		Run run = new Run(scene, frames, warmup);
+		run.build();
+		double buildTime = (System.nanoTime() - buildStart) / 1e6;
+
+		cam.setzeBlickpunkt(run.center[0], run.center[1], run.center[2]);
+		Consumer<Double> animation = run::animate;
+		cam.jedesBild(animation);
+		cam.beobachteStatistik(run::record);
+		boolean complete = run.done.await(timeout, TimeUnit.SECONDS);
+		cam.entferneAktion(animation);
+
+		StringBuilder json = new StringBuilder("{");
+		header(json, scene, mode).append(", ");
+		field(json, "effectiveMode", effectiveMode).append(", ");
+		field(json, "glRenderer", glInfo[0]).append(", ");
+		field(json, "glVersion", glInfo[1]).append(", ");
+		field(json, "buildMs", buildTime).append(", ");
+		run.report(json);
+		if (!complete)
+			field(json.append(", "), "error", "timeout after " + run.measured + " frames");
+		System.out.println(RESULT_PREFIX + json.append('}'));
+		System.out.flush();
+		System.exit(0);
+	}
+
+	private static void fail(Scene pScene, String pMode, String pMessage) {
+		StringBuilder json = new StringBuilder("{");
+		header(json, pScene, pMode).append(", ");
+		field(json, "error", pMessage);
+		System.out.println(RESULT_PREFIX + json.append('}'));
+		System.out.flush();
+		System.exit(1);
+	}
+
+	/* One scene being animated and measured. animate runs on the render
+	 * thread at the start of every frame, record after every rendered
+	 * frame.
+	 */
+	private final static class Run {
+		final Scene scene;
+		final int frames, warmup;
+		final CountDownLatch done = new CountDownLatch(1);
+		final float[] center = new float[3];
+
+		GLBewegbaresObjekt[] objects;
+		float[] positions, angles, scales;
+		float orbit;
+
+		// animation step, advanced once per frame
+		int step = 0;
+		// frames recorded so far, including the warm-up
+		int seen = 0, measured = 0;
+		long lastFrame, measureStart, measureEnd;
+		final double[] frameTime, cpuTime, gpuTime;
+		long drawCalls, triangles, stateChanges, culled;
+
+		Run(Scene pScene, int pFrames, int pWarmup) {
+			scene = pScene;
+			frames = pFrames;
+			warmup = pWarmup;
+			frameTime = new double[pFrames];
+			cpuTime = new double[pFrames];
+			gpuTime = new double[pFrames];
+		}
+
+		void build() throws IOException {
+			int n = scene.count;
+			objects = new GLBewegbaresObjekt[n];
+			positions = new float[3 * n];
+			angles = new float[3 * n];
+
+			// meshes and labels are laid out on the ground, everything else
+			// in a cube
+			boolean flat = scene == Scene.MESHES || scene == Scene.LABELS;
+			int side = (int) Math.ceil(flat ? Math.sqrt(n) : Math.cbrt(n));
+			for (int i = 0; i < n; ++i) {
+				positions[3 * i] = GRID * (i % side);
+				positions[3 * i + 1] = flat ? 0 : GRID * (i / side % side);
+				positions[3 * i + 2] = GRID * (flat ? i / side : i / (side * side));
+			}
+			float max = GRID * (side - 1);
+			center[0] = center[2] = max / 2;
+			center[1] = flat ? 0 : max / 2;
+			orbit = 1.5f * max + 4 * GRID;
+
+			switch (scene) {
+			case MIXED:
+				buildMixed();
+				break;
+			case MESHES:
+				buildMeshes();
+				break;
+			case LABELS:
+				for (int i = 0; i < n; ++i) {
+					GLText t = new GLText(0, 0, 0, "Text " + i);
+					t.setzeAutodrehung(true);
+					objects[i] = t;
+				}
+				break;
+			default:
+				for (int i = 0; i < n; ++i) {
+					GLKugel k = new GLKugel(0, 0, 0, GRID / 3);
+					k.setzeQualitaet(QUALITY);
+					objects[i] = k;
+				}
+			}
+
+			GLBewegbaresObjekt.setzeTransformationen(objects, positions, angles, scales);
+		}
+
+		private void buildMixed() {
+			String dir = System.getProperty("bgloop.bench.examples", "../examples");
+			GLTextur[] textures = { new GLTextur(dir + "/2_Erdeszene/Erde.jpg"),
+					new GLTextur(dir + "/3_Uhrszene/Holz.jpg"), new GLTextur(dir + "/4_Ufospiel/Krater.jpg"),
+					new GLTextur(dir + "/1_Schneemannszene/Schnee.jpg") };
+			float s = GRID / 3;
+			for (int i = 0; i < objects.length; ++i) {
+				// every other object untextured, the rest spread over the
+				// textures
+				GLTextur t = i % 2 == 0 ? null : textures[i / 2 % textures.length];
+				TransformableSurfaceObject o;
+				switch (i % 6) {
+				case 0:
+					o = t == null ? new GLKugel(0, 0, 0, s) : new GLKugel(0, 0, 0, s, t);
+					break;
+				case 1:
+					o = t == null ? new GLQuader(0, 0, 0, s, 2 * s, s) : new GLQuader(0, 0, 0, s, 2 * s, s, t);
+					break;
+				case 2:
+					o = t == null ? new GLZylinder(0, 0, 0, s, 2 * s) : new GLZylinder(0, 0, 0, s, 2 * s, t);
+					break;
+				case 3:
+					o = t == null ? new GLKegel(0, 0, 0, s, 2 * s) : new GLKegel(0, 0, 0, s, 2 * s, t);
+					break;
+				case 4:
+					o = t == null ? new GLTorus(0, 0, 0, s, s / 3) : new GLTorus(0, 0, 0, s, s / 3, t);
+					break;
+				default:
+					o = t == null ? new GLWuerfel(0, 0, 0, s) : new GLWuerfel(0, 0, 0, s, t);
+				}
+				o.setzeQualitaet(QUALITY);
+				objects[i] = o;
+			}
+		}
+
+		private void buildMeshes() throws IOException {
+			File file = new File(System.getProperty("bgloop.bench.airboat", "../examples/5_Mesh/airboat.obj"));
+			if (!file.canRead())
+				throw new IOException("mesh not found: " + file.getAbsolutePath());
+			// setzeTransformationen replaces the scaling GLMesh applies, so
+			// it has to be repeated here
+			Build b = new Build();
+			new Parse(b, file);
+			float extent = 0;
+			for (int i = 0; i < 3; ++i)
+				extent = Math.max(extent, b.vertexCoordinateRanges[2 * i + 1] - b.vertexCoordinateRanges[2 * i]);
+			scales = new float[3 * objects.length];
+			Arrays.fill(scales, GRID / extent);
+			for (int i = 0; i < objects.length; ++i)
+				objects[i] = new GLMesh(file.getPath(), GRID);
+		}
+
+		void animate(double pDt) {
+			++step;
+			for (int i = 0; i < objects.length; ++i)
+				angles[3 * i + 1] = (2 * step + 7 * i) % 360;
+			GLBewegbaresObjekt.setzeTransformationen(objects, positions, angles, scales);
+			double a = Math.toRadians(0.5 * step);
+			GLKamera.aktiveKamera().setzePosition(center[0] + orbit * Math.sin(a), center[1] + orbit / 3,
+					center[2] + orbit * Math.cos(a));
+		}
+
+		void record(GLStatistik s) {
+			long now = System.nanoTime();
+			// at least one frame before, to start the first interval
+			if (seen++ < Math.max(warmup, 1)) {
+				lastFrame = measureStart = now;
+				return;
+			}
+			if (measured == frames)
+				return;
+			frameTime[measured] = (now - lastFrame) / 1e6;
+			cpuTime[measured] = s.gibCPUZeit();
+			gpuTime[measured] = s.gibGPUZeit();
+			drawCalls += s.gibZeichenaufrufe();
+			triangles += s.gibDreiecke();
+			stateChanges += s.gibZustandswechsel();
+			culled += s.gibVerworfeneObjekte();
+			lastFrame = measureEnd = now;
+			if (++measured == frames)
+				done.countDown();
+		}
+
+		void report(StringBuilder json) {
+			int n = Math.max(measured, 1);
+			double seconds = (measureEnd - measureStart) / 1e9;
+			field(json, "objects", objects.length).append(", ");
+			field(json, "frames", measured).append(", ");
+			field(json, "seconds", seconds).append(", ");
+			field(json, "fps", seconds > 0 ? measured / seconds : 0).append(", ");
+			field(json, "objectsPerSecond", seconds > 0 ? measured * (double) objects.length / seconds : 0)
+					.append(", ");
+			percentiles(json, "frameMs", frameTime, measured).append(", ");
+			percentiles(json, "cpuMs", cpuTime, measured).append(", ");
+			percentiles(json, "gpuMs", gpuTime, measured).append(", ");
+			field(json, "drawCallsPerFrame", drawCalls / (double) n).append(", ");
+			field(json, "stateChangesPerFrame", stateChanges / (double) n).append(", ");
+			field(json, "trianglesPerFrame", triangles / (double) n).append(", ");
+			field(json, "culledPerFrame", culled / (double) n);
+		}
+	}
+
+	/* ---- JSON output ---- */
+
+	private static StringBuilder header(StringBuilder json, Scene pScene, String pMode) {
+		field(json, "scene", pScene.id).append(", ");
+		return field(json, "mode", pMode);
+	}
+
+	private static StringBuilder percentiles(StringBuilder json, String pName, double[] pValues, int pCount) {
+		double[] v = Arrays.copyOf(pValues, pCount);
+		Arrays.sort(v);
+		json.append('"').append(pName).append("\": {");
+		field(json, "mean", Arrays.stream(v).average().orElse(0)).append(", ");
+		field(json, "p50", percentile(v, 50)).append(", ");
+		field(json, "p90", percentile(v, 90)).append(", ");
+		field(json, "p99", percentile(v, 99)).append(", ");
+		return field(json, "max", v.length == 0 ? 0 : v[v.length - 1]).append('}');
+	}
+
+	// nearest rank
+	private static double percentile(double[] pSorted, int pP) {
+		if (pSorted.length == 0)
+			return 0;
+		int rank = (int) Math.ceil(pP / 100.0 * pSorted.length);
+		return pSorted[Math.max(rank, 1) - 1];
+	}
+
+	private static StringBuilder field(StringBuilder json, String pName, double pValue) {
+		return json.append('"').append(pName).append("\": ").append(String.format(Locale.ROOT, "%.4f", pValue));
+	}
+
+	private static StringBuilder field(StringBuilder json, String pName, int pValue) {
+		return json.append('"').append(pName).append("\": ").append(pValue);
+	}
+
+	private static StringBuilder field(StringBuilder json, String pName, String pValue) {
+		json.append('"').append(pName).append("\": ");
+		if (pValue == null)
+			return json.append("null");
+		json.append('"');
+		for (char c : pValue.toCharArray())
+			if (c == '"' || c == '\\')
+				json.append('\\').append(c);
+			else if (c < 0x20)
+				json.append(String.format("\\u%04x", (int) c));
+			else
+				json.append(c);
+		return json.append('"');
+	}
+}
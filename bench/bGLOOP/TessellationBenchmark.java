@@ -0,0 +1,75 @@
+package bGLOOP;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jogamp.common.nio.Buffers;
+
+/* The VBO tessellation of sphere, torus and prismoid, writing into a
+ * direct buffer like the mapped VBO the renderer hands them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TessellationBenchmark {
+	@Param({ "12", "48", "192" })
+	public int quality;
+
+	private GLKugel sphere;
+	private GLTorus torus;
+	private GLPrismoid prismoid;
+	private GeometryCache.Key sphereKey, torusKey, prismoidKey;
+	private FloatBuffer sphereBuffer, torusBuffer, prismoidBuffer;
+
+	@Setup
+	public void setup() {
+		BenchmarkScene.camera();
+		sphere = new GLKugel(0, 0, 0, 10);
+		sphere.setzeQualitaet(quality);
+		torus = new GLTorus(0, 0, 0, 10, 3);
+		torus.setzeQualitaet(quality);
+		prismoid = new GLPrismoid(0, 0, 0, 10, 5, quality, 20);
+		sphereKey = sphere.geometryKey();
+		torusKey = torus.geometryKey();
+		prismoidKey = prismoid.geometryKey();
+		sphereBuffer = Buffers.newDirectFloatBuffer(sphere.vboVertexCount(sphereKey) * Geometry.FLOATS_PER_VERTEX);
+		torusBuffer = Buffers.newDirectFloatBuffer(torus.vboVertexCount(torusKey) * Geometry.FLOATS_PER_VERTEX);
+		prismoidBuffer = Buffers.newDirectFloatBuffer(prismoid.vboVertexCount(prismoidKey) * Geometry.FLOATS_PER_VERTEX);
+	}
+
+	@Benchmark
+	public FloatBuffer sphere() {
+		sphereBuffer.clear();
+		sphere.fillVBO(sphereBuffer, sphereKey);
+		return sphereBuffer;
+	}
+
+	@Benchmark
+	public FloatBuffer torus() {
+		torusBuffer.clear();
+		torus.fillVBO(torusBuffer, torusKey);
+		return torusBuffer;
+	}
+
+	@Benchmark
+	public FloatBuffer prismoid() {
+		prismoidBuffer.clear();
+		prismoid.fillVBO(prismoidBuffer, prismoidKey);
+		return prismoidBuffer;
+	}
+}
@@ -0,0 +1,104 @@
+package bGLOOP;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bGLOOP.linalg.Matrix4;
+
+/* Matrix operations and the transformations of movable objects, single
+ * and in bulk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransformBenchmark {
+	private final static int BULK = 20000;
+
+	private final Matrix4 matrix = new Matrix4();
+	private final float[] other = new Matrix4().getMatrix();
+	private GLKugel sphere;
+	private GLBewegbaresObjekt[] objects;
+	private float[] positions, angles;
+	private float step = 0;
+
+	@Setup
+	public void setup() {
+		BenchmarkScene.camera();
+		sphere = new GLKugel(0, 0, 0, 10);
+		objects = new GLBewegbaresObjekt[BULK];
+		positions = new float[3 * BULK];
+		angles = new float[3 * BULK];
+		for (int i = 0; i < BULK; ++i) {
+			objects[i] = new GLKugel(i, 0, 0, 1);
+			positions[3 * i] = i;
+			angles[3 * i + 1] = i % 360;
+		}
+		other[12] = 1;
+		other[5] = 0.5f;
+	}
+
+	@Benchmark
+	public Matrix4 matrixMultiplyFromLeft() {
+		matrix.multMatrixFromLeft(other);
+		return matrix;
+	}
+
+	@Benchmark
+	public Matrix4 matrixTranslateFromLeft() {
+		matrix.translateFromLeft(1, 2, 3);
+		return matrix;
+	}
+
+	@Benchmark
+	public GLKugel verschiebe() {
+		sphere.verschiebe(0.1, 0, 0);
+		return sphere;
+	}
+
+	@Benchmark
+	public GLKugel drehe() {
+		sphere.drehe(1, 2, 3);
+		return sphere;
+	}
+
+	@Benchmark
+	public GLKugel dreheUmAchse() {
+		sphere.drehe(1, 0, 0, 0, 0, 1, 0);
+		return sphere;
+	}
+
+	@Benchmark
+	public GLKugel skaliere() {
+		sphere.skaliere(1.0001);
+		return sphere;
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public GLBewegbaresObjekt[] verschiebeEinzeln() {
+		step = -step;
+		for (GLBewegbaresObjekt o : objects)
+			o.setzePosition(o.gibX(), step, 0);
+		return objects;
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public GLBewegbaresObjekt[] setzeTransformationen() {
+		GLBewegbaresObjekt.setzeTransformationen(objects, positions, angles, null);
+		return objects;
+	}
+}
@@ -13,4 +13,12 @@ abstract class DisplayItem {
 	abstract void render(GL2 gl, GLU glu);
 
 	abstract boolean isTransparent();
+
+	/* Distance of the item along the viewing direction pDir of a camera
+	 * located at pEye. Only used for sorting, items without a position
+	 * are treated as lying in the camera's plane.
+	 */
+	float viewDepth(float[] pEye, float[] pDir) {
+		return 0;
+	}
 }
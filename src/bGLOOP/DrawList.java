@@ -0,0 +1,144 @@
+package bGLOOP;
+
+import java.util.Arrays;
+
+/* A list of 64 bit sort keys, one for each item that has to be drawn
+ * in the current frame. The key packs everything that determines the
+ * drawing order, so sorting the keys minimizes GL state changes and
+ * renders opaque objects front to back. Layout (most significant first):
+ *
+ *   63     always 0 (keeps keys positive)
+ *   61-62  layer (lights before opaque objects)
+ *   52-60  texture id
+ *   50-51  render mode
+ *   40-49  geometry id
+ *   30-39  material hash
+ *   18-29  quantized view depth
+ *    0-17  index into the renderer's item array
+ *
+ * Objects sharing a geometry end up next to each other, so the renderer
+ * can draw them as one batch with the buffer bound only once.
+ *
+ * Transparent objects use depth keys instead (see makeDepthKey), which
+ * order them strictly back to front. Their 32 bit depth leaves room for
+ * a 31 bit index, so they can be sorted in scenes of any size.
+ *
+ * All arrays are reused from frame to frame, sorting does not allocate
+ * once the list has grown to the size of the scene.
+ */
+final class DrawList {
+	final static int LAYER_LIGHT = 0, LAYER_OPAQUE = 1;
+	final static int MAX_DEPTH = 0xFFF;
+	final static int INDEX_MASK = 0x3FFFF, DEPTH_INDEX_MASK = 0x7FFFFFFF;
+	private final static int INSERTION_SORT_THRESHOLD = 32;
+
+	private long[] keys, scratch;
+	private final int[] counts = new int[256];
+	private int size = 0;
+
+	DrawList(int pCapacity) {
+		keys = new long[pCapacity];
+		scratch = new long[pCapacity];
+	}
+
+	static long makeKey(int pLayer, int pTexture, int pMode, int pGeometry, int pMaterial, int pDepth,
+			int pIndex) {
+		return ((long) (pLayer & 0x3) << 61)
+			| ((long) (pTexture & 0x1FF) << 52)
+			| ((long) (pMode & 0x3) << 50)
+			| ((long) (pGeometry & 0x3FF) << 40)
+			| ((long) (pMaterial & 0x3FF) << 30)
+			| ((long) (pDepth & MAX_DEPTH) << 18)
+			| (pIndex & INDEX_MASK);
+	}
+
+	/* Key which sorts items by descending depth, i.e. back to front. The
+	 * float is mapped to an unsigned integer of the same order.
+	 */
+	static long makeDepthKey(float pDepth, int pIndex) {
+		int bits = Float.floatToIntBits(-pDepth);
+		bits ^= (bits >> 31) & 0x7FFFFFFF;
+		return ((long) (bits ^ 0x80000000) & 0xFFFFFFFFL) << 31 | (pIndex & DEPTH_INDEX_MASK);
+	}
+
+	/* Map a view space depth to 12 bit. The square root spends more of the
+	 * available resolution on objects close to the camera, where the order
+	 * matters most for early depth rejection.
+	 */
+	static int quantizeDepth(float pDepth, float pFar) {
+		if (pDepth <= 0)
+			return 0;
+		if (pDepth >= pFar)
+			return MAX_DEPTH;
+		return (int) (Math.sqrt(pDepth / pFar) * MAX_DEPTH);
+	}
+
+	void ensureCapacity(int pCapacity) {
+		if (keys.length < pCapacity) {
+			keys = new long[pCapacity];
+			scratch = new long[pCapacity];
+			size = 0;
+		}
+	}
+
+	void clear() {
+		size = 0;
+	}
+
+	void add(long pKey) {
+		keys[size++] = pKey;
+	}
+
+	int size() {
+		return size;
+	}
+
+	int index(int i) {
+		return (int) (keys[i] & INDEX_MASK);
+	}
+
+	int depthIndex(int i) {
+		return (int) (keys[i] & DEPTH_INDEX_MASK);
+	}
+
+	void sort() {
+		if (size < INSERTION_SORT_THRESHOLD) {
+			insertionSort();
+			return;
+		}
+
+		// LSD radix sort, 8 bits per pass; passes where all keys share
+		// the same digit are skipped, which is common for the upper bytes
+		long[] src = keys, dst = scratch, t;
+		for (int shift = 0; shift < 64; shift += 8) {
+			Arrays.fill(counts, 0);
+			for (int i = 0; i < size; ++i)
+				counts[(int) (src[i] >>> shift) & 0xFF]++;
+			if (counts[(int) (src[0] >>> shift) & 0xFF] == size)
+				continue;
+
+			for (int b = 0, sum = 0, c; b < 256; ++b) {
+				c = counts[b];
+				counts[b] = sum;
+				sum += c;
+			}
+			for (int i = 0; i < size; ++i)
+				dst[counts[(int) (src[i] >>> shift) & 0xFF]++] = src[i];
+			t = src;
+			src = dst;
+			dst = t;
+		}
+		keys = src;
+		scratch = dst;
+	}
+
+	private void insertionSort() {
+		long k;
+		for (int i = 1, j; i < size; ++i) {
+			k = keys[i];
+			for (j = i - 1; j >= 0 && keys[j] > k; --j)
+				keys[j + 1] = keys[j];
+			keys[j + 1] = k;
+		}
+	}
+}
@@ -0,0 +1,283 @@
+package bGLOOP;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.imageio.ImageIO;
+
+import com.jogamp.opengl.GL2;
+
+/* Records every n-th rendered frame, either as a numbered image sequence
+ * or as one raw stream of RGB bytes (rows from top to bottom, frames
+ * back to back). Frames are read into a ring of pixel buffer objects and
+ * mapped RING frames later, when the GPU is done with them, so the
+ * render thread never waits for the readback.
+ *
+ * The pixels are copied into a fixed pool of buffers which the writer
+ * threads return after writing. If all buffers are in use, the frame is
+ * either dropped or the render thread waits for a writer, which slows
+ * rendering down to the speed of the disk.
+ *
+ * Methods without comment are called on the GL thread.
+ */
+final class FrameRecorder {
+	private final static int RING = 3;
+	private final static int POOL_SIZE = 8;
+
+	private final static class Frame {
+		final byte[] pixels;
+		int index, width, height;
+
+		Frame(byte[] pPixels) {
+			pixels = pPixels;
+		}
+	}
+
+	private final static Frame END = new Frame(null);
+
+	private Logger log = Logger.getLogger("bGLOOP");
+	private final String target, format;
+	private final boolean raw, dropFrames;
+	private final int interval;
+	private final int[] pbo = new int[RING], pboCapacity = new int[RING], pboWidth = new int[RING],
+			pboHeight = new int[RING], pboIndex = new int[RING];
+	private final boolean[] pboFull = new boolean[RING];
+	private int nextPbo = 0, frameCounter = 0, frameIndex = 0;
+	private final ArrayBlockingQueue<Frame> freeFrames = new ArrayBlockingQueue<Frame>(POOL_SIZE);
+	private int allocatedFrames = 0, frameSize = 0;
+	private final LinkedBlockingQueue<Frame> written = new LinkedBlockingQueue<Frame>();
+	private final CountDownLatch writersDone, handedOver = new CountDownLatch(1);
+	private final AtomicInteger recorded = new AtomicInteger(), dropped = new AtomicInteger();
+	private volatile boolean stopRequested = false;
+	// only used by the single writer of a raw stream
+	private OutputStream rawOut;
+	private int rawWidth = -1, rawHeight = -1;
+	private byte[] rawRow;
+
+	/* pTarget is the file of a raw stream if it ends with ".rgb", otherwise
+	 * the prefix of the image files.
+	 */
+	FrameRecorder(String pTarget, String pFormat, int pInterval, boolean pDropFrames) {
+		target = pTarget;
+		format = pFormat;
+		raw = pTarget.toLowerCase().endsWith(".rgb");
+		interval = pInterval;
+		dropFrames = pDropFrames;
+
+		int writers = raw ? 1 : Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1));
+		writersDone = new CountDownLatch(writers);
+		for (int i = 0; i < writers; ++i) {
+			Thread t = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					writeFrames();
+				}
+			}, "bGLOOP-recorder");
+			t.setDaemon(true);
+			t.start();
+		}
+	}
+
+	/* Called by the rendering thread after the scene has been drawn. */
+	void capture(GL2 gl, int pWidth, int pHeight) {
+		if (frameCounter++ % interval != 0 || pWidth <= 0 || pHeight <= 0)
+			return;
+
+		int i = nextPbo, size = pWidth * pHeight * 4;
+		nextPbo = (nextPbo + 1) % RING;
+		if (pboFull[i])
+			collect(gl, i);
+		if (pbo[i] == 0) {
+			int[] id = new int[1];
+			gl.glGenBuffers(1, id, 0);
+			pbo[i] = id[0];
+		}
+		gl.glBindBuffer(GL2.GL_PIXEL_PACK_BUFFER, pbo[i]);
+		if (pboCapacity[i] < size) {
+			gl.glBufferData(GL2.GL_PIXEL_PACK_BUFFER, size, null, GL2.GL_STREAM_READ);
+			pboCapacity[i] = size;
+		}
+		gl.glReadPixels(0, 0, pWidth, pHeight, GL2.GL_BGRA, GL2.GL_UNSIGNED_BYTE, 0);
+		gl.glBindBuffer(GL2.GL_PIXEL_PACK_BUFFER, 0);
+		pboWidth[i] = pWidth;
+		pboHeight[i] = pHeight;
+		pboIndex[i] = frameIndex++;
+		pboFull[i] = true;
+	}
+
+	/* May be called on any thread. */
+	void requestStop() {
+		stopRequested = true;
+	}
+
+	boolean isStopRequested() {
+		return stopRequested;
+	}
+
+	/* Hands the remaining frames to the writers and releases the buffers. */
+	void finish(GL2 gl) {
+		for (int j = 0; j < RING; ++j) {
+			int i = (nextPbo + j) % RING;
+			if (pboFull[i])
+				collect(gl, i);
+		}
+		for (int i = 0; i < RING; ++i)
+			if (pbo[i] != 0)
+				gl.glDeleteBuffers(1, pbo, i);
+		written.add(END);
+		handedOver.countDown();
+	}
+
+	/* May be called on any thread, for a GL thread that does not run any
+	 * more. The frames still in the pixel buffers are lost, those already
+	 * read are written; the buffers go away with the context.
+	 */
+	void finishWithoutGL() {
+		for (int i = 0; i < RING; ++i)
+			if (pboFull[i]) {
+				pboFull[i] = false;
+				dropped.incrementAndGet();
+			}
+		written.add(END);
+		handedOver.countDown();
+	}
+
+	/* May be called on any thread. Waits at most pMillis milliseconds for
+	 * finish or finishWithoutGL, returns whether one of them has run.
+	 */
+	boolean awaitHandedOver(long pMillis) throws InterruptedException {
+		return handedOver.await(pMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/* May be called on any thread. Waits until all frames are written and
+	 * returns their number.
+	 */
+	int awaitFinished() throws InterruptedException {
+		writersDone.await();
+		if (dropped.get() > 0)
+			log.warning(dropped.get() + " frames were dropped because writing was too slow");
+		return recorded.get();
+	}
+
+	private void collect(GL2 gl, int i) {
+		pboFull[i] = false;
+		Frame f = obtainFrame(pboWidth[i] * pboHeight[i] * 4);
+		if (f == null) {
+			dropped.incrementAndGet();
+			return;
+		}
+
+		gl.glBindBuffer(GL2.GL_PIXEL_PACK_BUFFER, pbo[i]);
+		ByteBuffer mapped = gl.glMapBuffer(GL2.GL_PIXEL_PACK_BUFFER, GL2.GL_READ_ONLY);
+		if (mapped != null) {
+			mapped.limit(pboWidth[i] * pboHeight[i] * 4);
+			mapped.get(f.pixels, 0, mapped.limit());
+			gl.glUnmapBuffer(GL2.GL_PIXEL_PACK_BUFFER);
+			f.index = pboIndex[i];
+			f.width = pboWidth[i];
+			f.height = pboHeight[i];
+			written.add(f);
+		} else {
+			log.warning("pixel buffer could not be mapped, frame " + pboIndex[i] + " is lost");
+			freeFrames.add(f);
+		}
+		gl.glBindBuffer(GL2.GL_PIXEL_PACK_BUFFER, 0);
+	}
+
+	/* A buffer of at least pSize bytes from the pool, or null if the frame
+	 * has to be dropped. The pool is refilled when the window grows.
+	 */
+	private Frame obtainFrame(int pSize) {
+		if (pSize > frameSize) {
+			frameSize = pSize;
+			freeFrames.clear();
+			allocatedFrames = 0;
+		}
+		Frame f = freeFrames.poll();
+		if (f == null && allocatedFrames < POOL_SIZE) {
+			allocatedFrames++;
+			return new Frame(new byte[frameSize]);
+		}
+		while (f != null && f.pixels.length < pSize)
+			f = freeFrames.poll();
+		if (f != null || dropFrames)
+			return f;
+		try {
+			do
+				f = freeFrames.take();
+			while (f.pixels.length < pSize);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return f;
+	}
+
+	private void writeFrames() {
+		Frame f;
+		try {
+			while ((f = written.take()) != END) {
+				try {
+					if (raw ? writeRaw(f) : writeImage(f))
+						recorded.incrementAndGet();
+				} catch (IOException e) {
+					log.log(Level.SEVERE, "Frame " + f.index + " could not be written", e);
+				}
+				freeFrames.offer(f);
+			}
+			// let the other writers see the end as well
+			written.add(END);
+			if (rawOut != null)
+				rawOut.close();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			log.log(Level.SEVERE, "Recording could not be closed", e);
+		} finally {
+			writersDone.countDown();
+		}
+	}
+
+	private boolean writeImage(Frame f) throws IOException {
+		File file = new File(target + "-" + String.format("%05d", f.index) + "." + format);
+		return ImageIO.write(ScreenshotPipeline.toImage(ByteBuffer.wrap(f.pixels, 0, f.width * f.height * 4),
+				f.width, f.height), format, file);
+	}
+
+	/* BGRA rows from the bottom to RGB rows from the top. All frames of a
+	 * stream must have the size of the first one.
+	 */
+	private boolean writeRaw(Frame f) throws IOException {
+		if (rawOut == null) {
+			rawOut = new BufferedOutputStream(new FileOutputStream(target), 1 << 20);
+			rawWidth = f.width;
+			rawHeight = f.height;
+			rawRow = new byte[3 * rawWidth];
+			log.info("Recording " + rawWidth + "x" + rawHeight + " RGB frames to " + target);
+		}
+		if (f.width != rawWidth || f.height != rawHeight) {
+			log.warning("Frame " + f.index + " has a different size and is skipped");
+			return false;
+		}
+		byte[] p = f.pixels;
+		for (int y = rawHeight - 1; y >= 0; --y) {
+			for (int x = 0, s = 4 * y * rawWidth, d = 0; x < rawWidth; ++x, s += 4, d += 3) {
+				rawRow[d] = p[s + 2];
+				rawRow[d + 1] = p[s + 1];
+				rawRow[d + 2] = p[s];
+			}
+			rawOut.write(rawRow);
+		}
+		return true;
+	}
+}
@@ -0,0 +1,193 @@
+package bGLOOP;
+
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jogamp.opengl.GL2;
+
+/* Collects the numbers of every rendered frame into a GLStatistik. The
+ * counters of the state and geometry cache run over the whole lifetime,
+ * a frame's values are the difference to the start of the frame.
+ *
+ * GPU time is measured with GL_TIME_ELAPSED queries if the driver has
+ * timer queries. Results are polled a few frames later, so reading them
+ * never stalls the pipeline.
+ *
+ * A frame only stores its raw numbers. The GLStatistik with the sorted
+ * percentiles is built when someone asks for it - gibStatistik, a
+ * listener or JMX - so a frame nobody looks at allocates nothing.
+ *
+ * beginFrame and endFrame are called on the GL thread, the rest on any
+ * thread. Everything the snapshot is built from is guarded by this.
+ */
+final class FrameStatistics {
+	private final static int QUERIES = 4;
+
+	private Logger log = Logger.getLogger("bGLOOP");
+	private final GLStateCache state;
+	private final GeometryCache geometryCache;
+	private final CopyOnWriteArrayList<Consumer<GLStatistik>> listeners =
+			new CopyOnWriteArrayList<Consumer<GLStatistik>>();
+	private long frame = 0;
+	// snapshot of the last frame, built by getLatest
+	private GLStatistik latest;
+
+	// raw values of the last frame
+	private int lastDraws, lastIssued, lastTriangles, lastVertices, lastDrawn, lastCulled, lastBinds,
+			lastLists, lastVBOs;
+	private long lastCpuTime;
+	private double lastFps;
+
+	// values of the cumulative counters at the start of the frame
+	private long startTime, startIssued, startDraws, startTriangles, startVertices, startBinds, startLists,
+			startVBOs;
+
+	// rolling windows of the last frame times in nanoseconds
+	private final long[] cpuTimes = new long[GLStatistik.FENSTER], gpuTimes = new long[GLStatistik.FENSTER],
+			sorted = new long[GLStatistik.FENSTER];
+	private int cpuCount = 0, gpuCount = 0, gpuNext = 0;
+	private long lastGpuTime = -1;
+
+	private Boolean timerQueries = null;
+	private final int[] queries = new int[QUERIES];
+	private final boolean[] queryPending = new boolean[QUERIES];
+	private int nextQuery = 0;
+	private final long[] queryResult = new long[1];
+	private final int[] queryAvailable = new int[1];
+
+	FrameStatistics(GLStateCache pState, GeometryCache pGeometryCache) {
+		state = pState;
+		geometryCache = pGeometryCache;
+	}
+
+	void addListener(Consumer<GLStatistik> pListener) {
+		listeners.add(pListener);
+	}
+
+	void removeListener(Consumer<GLStatistik> pListener) {
+		listeners.remove(pListener);
+	}
+
+	/* Returns the statistics of the last frame or null before the first
+	 * one; the snapshot is built once per frame at most.
+	 */
+	synchronized GLStatistik getLatest() {
+		if (frame == 0)
+			return null;
+		if (latest == null || latest.frame != frame)
+			latest = new GLStatistik(frame, lastDraws, lastIssued, lastTriangles, lastVertices, lastDrawn,
+					lastCulled, lastBinds, lastLists, lastVBOs, millis(lastCpuTime),
+					percentile(cpuTimes, cpuCount, 50), percentile(cpuTimes, cpuCount, 99),
+					lastGpuTime < 0 ? -1 : millis(lastGpuTime),
+					gpuCount == 0 ? -1 : percentile(gpuTimes, gpuCount, 50),
+					gpuCount == 0 ? -1 : percentile(gpuTimes, gpuCount, 99), lastFps);
+		return latest;
+	}
+
+	/* pStartTime is the time the frame started on the CPU. */
+	void beginFrame(GL2 gl, long pStartTime) {
+		startTime = pStartTime;
+		startIssued = state.getIssuedCalls();
+		startDraws = state.getDrawCalls();
+		startTriangles = state.getTriangles();
+		startVertices = state.getVertices();
+		startBinds = state.getTextureBinds();
+		startLists = geometryCache.getBuiltDisplayLists();
+		startVBOs = geometryCache.getBuiltVBOs();
+
+		if (timerQueries == null) {
+			timerQueries = gl.isExtensionAvailable("GL_ARB_timer_query")
+					|| gl.isExtensionAvailable("GL_EXT_timer_query");
+			if (timerQueries)
+				gl.glGenQueries(QUERIES, queries, 0);
+			else
+				log.info("no timer queries, GPU times are not measured");
+		}
+		if (timerQueries) {
+			pollQueries(gl);
+			if (!queryPending[nextQuery])
+				gl.glBeginQuery(GL2.GL_TIME_ELAPSED_EXT, queries[nextQuery]);
+		}
+	}
+
+	void endFrame(GL2 gl, int pDrawn, int pCulled, double pFps) {
+		if (timerQueries) {
+			// a query still pending after QUERIES frames is skipped, see
+			// beginFrame
+			if (!queryPending[nextQuery]) {
+				gl.glEndQuery(GL2.GL_TIME_ELAPSED_EXT);
+				queryPending[nextQuery] = true;
+			}
+			nextQuery = (nextQuery + 1) % QUERIES;
+		}
+
+		long cpu = System.nanoTime() - startTime;
+		synchronized (this) {
+			cpuTimes[(int) (frame % GLStatistik.FENSTER)] = cpu;
+			cpuCount = Math.min(cpuCount + 1, GLStatistik.FENSTER);
+			lastCpuTime = cpu;
+			lastDraws = (int) (state.getDrawCalls() - startDraws);
+			lastIssued = (int) (state.getIssuedCalls() - startIssued);
+			lastTriangles = (int) (state.getTriangles() - startTriangles);
+			lastVertices = (int) (state.getVertices() - startVertices);
+			lastDrawn = pDrawn;
+			lastCulled = pCulled;
+			lastBinds = (int) (state.getTextureBinds() - startBinds);
+			lastLists = (int) (geometryCache.getBuiltDisplayLists() - startLists);
+			lastVBOs = (int) (geometryCache.getBuiltVBOs() - startVBOs);
+			lastFps = pFps;
+			frame++;
+		}
+
+		if (listeners.isEmpty())
+			return;
+		GLStatistik s = getLatest();
+		for (Consumer<GLStatistik> l : listeners)
+			try {
+				l.accept(s);
+			} catch (RuntimeException e) {
+				log.log(Level.SEVERE, "statistics listener failed and is removed", e);
+				listeners.remove(l);
+			}
+	}
+
+	void dispose(GL2 gl) {
+		if (timerQueries != null && timerQueries)
+			gl.glDeleteQueries(QUERIES, queries, 0);
+		timerQueries = null;
+	}
+
+	/* Collect the results of finished queries without waiting. */
+	private void pollQueries(GL2 gl) {
+		for (int i = 0; i < QUERIES; ++i) {
+			if (!queryPending[i])
+				continue;
+			gl.glGetQueryObjectiv(queries[i], GL2.GL_QUERY_RESULT_AVAILABLE, queryAvailable, 0);
+			if (queryAvailable[0] == 0)
+				continue;
+			gl.glGetQueryObjectui64v(queries[i], GL2.GL_QUERY_RESULT, queryResult, 0);
+			queryPending[i] = false;
+			synchronized (this) {
+				lastGpuTime = queryResult[0];
+				gpuTimes[gpuNext] = lastGpuTime;
+				gpuNext = (gpuNext + 1) % GLStatistik.FENSTER;
+				gpuCount = Math.min(gpuCount + 1, GLStatistik.FENSTER);
+			}
+		}
+	}
+
+	private double percentile(long[] pSamples, int pCount, int pPercent) {
+		if (pCount == 0)
+			return 0;
+		System.arraycopy(pSamples, 0, sorted, 0, pCount);
+		Arrays.sort(sorted, 0, pCount);
+		return millis(sorted[Math.min(pCount - 1, pCount * pPercent / 100)]);
+	}
+
+	private static double millis(long pNanos) {
+		return pNanos / 1e6;
+	}
+}
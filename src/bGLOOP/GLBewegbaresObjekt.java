@@ -2,8 +2,10 @@ package bGLOOP;
 
 import static java.lang.Math.toRadians;
 
+import com.jogamp.opengl.math.FloatUtil;
 import com.jogamp.opengl.math.Quaternion;
 import com.jogamp.opengl.math.VectorUtil;
+import com.jogamp.opengl.math.geom.AABBox;
 
 import bGLOOP.linalg.Matrix4;
 
@@ -14,11 +16,39 @@ import bGLOOP.linalg.Matrix4;
  */
 public abstract class GLBewegbaresObjekt extends GLObjekt implements IGLTransformierbar, IGLDisplayable {
 	Matrix4 transformationMatrix;
+	// copy of transformationMatrix for the render thread, updated at the
+	// start of a frame if the transformation has changed (see
+	// publishTransform); rendering reads it without locking
+	final float[] renderMatrix = new float[16];
+	private volatile boolean transformPublished = false;
+	// local bounds of the shape, taken along with renderMatrix; only
+	// touched by the GL thread
+	private final float[] localCenter = new float[3], localExtent = new float[3];
+	private float localBoundsRadius = -1;
+	// world space bounding sphere and box, only valid if boundsRadius >= 0.
+	// Computed from the snapshot above by LooseOctree.update, so they
+	// belong to the frame being drawn. Written by the GL thread while it
+	// holds the octree's lock, read there or on the GL thread.
+	final float[] boundsCenter = new float[3];
+	float boundsRadius = -1;
+	// largest factor by which the transformation scales lengths
+	float boundsScale = 1;
+	final AABBox boundsBox = new AABBox();
+	// renderMatrix the bounds were computed from, for picking on other
+	// threads
+	final float[] boundsMatrix = new float[16];
+	// position in the renderer's LooseOctree, maintained by the octree
+	LooseOctree.Node indexNode;
+	int indexSlot;
+	volatile boolean indexQueued = false, indexRemoved = false;
+	// frame in which the octree found the object inside the view frustum
+	int visibleStamp;
 
 	GLBewegbaresObjekt() {
 		super();
 		// this must be initialized BEFORE adding to any display lists
 		transformationMatrix = new Matrix4();
+		System.arraycopy(transformationMatrix.getMatrix(), 0, renderMatrix, 0, 16);
 		setzeDarstellungsModus(conf.displayMode = wconf.globalDrawMode);
 	}
 
@@ -29,7 +59,7 @@ public abstract class GLBewegbaresObjekt extends GLObjekt implements IGLTransfor
 		m[13] = (float)(m[13] + pY*m[15]);
 		m[14] = (float)(m[14] + pZ*m[15]);
 		m[15] = 1;
-		scheduleRender();
+		transformChanged();
 	}
 
 	@Override
@@ -39,7 +69,7 @@ public abstract class GLBewegbaresObjekt extends GLObjekt implements IGLTransfor
 		m[13] = (float) pY;
 		m[14] = (float) pZ;
 		m[15] = 1;
-		scheduleRender();
+		transformChanged();
 	}
 
 	@Override
@@ -48,7 +78,7 @@ public abstract class GLBewegbaresObjekt extends GLObjekt implements IGLTransfor
 		float[] tr = { tm[12], tm[13], tm[14] };
 		transformationMatrix = new Matrix4();
 		transformationMatrix.translateFromLeft(tr[0], tr[1], tr[2]);
-		scheduleRender();
+		transformChanged();
 	}
 
 	@Override
@@ -63,7 +93,7 @@ public abstract class GLBewegbaresObjekt extends GLObjekt implements IGLTransfor
 		// shift to its position from before
 		transformationMatrix.translateFromLeft((float) pX, (float) pY, (float) pZ);
 
-		scheduleRender();
+		transformChanged();
 	}
 
 	@Override
@@ -85,7 +115,7 @@ public abstract class GLBewegbaresObjekt extends GLObjekt implements IGLTransfor
 	}
 
 	@Override
-	public void drehe(double pWinkel, double pOrtX, double pOrtY, double pOrtZ, double pRichtX, double pRichtY,
+	public synchronized void drehe(double pWinkel, double pOrtX, double pOrtY, double pOrtZ, double pRichtX, double pRichtY,
 			double pRichtZ) {
 		float[] axis = new float[] { (float)pRichtX, (float)pRichtY, (float)pRichtZ };
 		VectorUtil.normalizeVec3(axis);
@@ -98,7 +128,7 @@ public abstract class GLBewegbaresObjekt extends GLObjekt implements IGLTransfor
 		// shift to it's position from before
 		transformationMatrix.translateFromLeft((float) pOrtX, (float) pOrtY, (float) pOrtZ);
 
-		scheduleRender();
+		transformChanged();
 	}
 
 	@Override
@@ -121,7 +151,7 @@ public abstract class GLBewegbaresObjekt extends GLObjekt implements IGLTransfor
 		scaleMatrix.multMatrix(transformationMatrix);
 		scaleMatrix.translateFromLeft(tr[0], tr[1], tr[2]);
 		transformationMatrix = scaleMatrix;
-		scheduleRender();
+		transformChanged();
 	}
 
 	@Override
@@ -129,6 +159,251 @@ public abstract class GLBewegbaresObjekt extends GLObjekt implements IGLTransfor
 		skaliere(pFaktor, pFaktor, pFaktor);
 	}
 
+	private void transformChanged() {
+		transformUpdated();
+		scheduleRender();
+	}
+
+	/* Everything transformChanged does except scheduling a render, for the
+	 * bulk updates below. Must be called with the object's lock held.
+	 */
+	private void transformUpdated() {
+		invalidateBounds();
+		publishTransform();
+	}
+
+	/**
+	 * Setzt die Positionen vieler Objekte auf einmal. Rotation und
+	 * Skalierung der Objekte bleiben erhalten. Das ist deutlich schneller
+	 * als {@link #setzePosition(double, double, double)} für jedes Objekt
+	 * einzeln aufzurufen, da das Fenster nur einmal neu gezeichnet wird.
+	 *
+	 * @param pObjekte Die zu verschiebenden Objekte
+	 * @param pPositionen Die neuen Positionen, je drei Werte (x, y, z) pro
+	 *            Objekt in der Reihenfolge von <code>pObjekte</code>
+	 * @throws IllegalArgumentException falls <code>pPositionen</code> zu
+	 *             wenige Werte enthält
+	 */
+	public static void setzePositionen(GLBewegbaresObjekt[] pObjekte, float[] pPositionen) {
+		checkLength(pPositionen, 3 * pObjekte.length, "pPositionen");
+		GLRenderer renderer = null;
+		float[] m;
+		for (int i = 0, j = 0; i < pObjekte.length; ++i, j += 3) {
+			GLBewegbaresObjekt obj = pObjekte[i];
+			synchronized (obj) {
+				m = obj.transformationMatrix.getMatrix();
+				m[12] = pPositionen[j];
+				m[13] = pPositionen[j + 1];
+				m[14] = pPositionen[j + 2];
+				m[15] = 1;
+				obj.transformUpdated();
+			}
+			renderer = nextRenderer(renderer, obj);
+		}
+		if (renderer != null)
+			renderer.scheduleRender();
+	}
+
+	/**
+	 * Setzt Position, Rotation und Skalierung vieler Objekte auf einmal.
+	 * Die bisherige Transformation der Objekte wird dabei ersetzt. Jedes
+	 * Objekt wird zuerst skaliert, dann um die Winkel gedreht (wie bei
+	 * {@link #drehe(double, double, double)}) und schließlich an die
+	 * Position verschoben.
+	 *
+	 * @param pObjekte Die zu transformierenden Objekte
+	 * @param pPositionen Die Positionen, je drei Werte (x, y, z) pro Objekt
+	 * @param pWinkel Die Drehwinkel um die x-, y- und z-Achse in Grad, je
+	 *            drei Werte pro Objekt, oder <code>null</code> für keine
+	 *            Drehung
+	 * @param pSkalierungen Die Skalierungsfaktoren in x-, y- und
+	 *            z-Richtung, je drei Werte pro Objekt, oder
+	 *            <code>null</code> für keine Skalierung
+	 * @throws IllegalArgumentException falls eines der Felder zu wenige
+	 *             Werte enthält
+	 */
+	public static void setzeTransformationen(GLBewegbaresObjekt[] pObjekte, float[] pPositionen, float[] pWinkel,
+			float[] pSkalierungen) {
+		if (pWinkel != null)
+			checkLength(pWinkel, 3 * pObjekte.length, "pWinkel");
+		applyTransforms(pObjekte, pPositionen, pWinkel, true, pSkalierungen);
+	}
+
+	/**
+	 * Setzt Position, Rotation und Skalierung vieler Objekte auf einmal.
+	 * Wie {@link #setzeTransformationen(GLBewegbaresObjekt[], float[], float[], float[])},
+	 * die Rotationen werden aber als Quaternionen angegeben.
+	 *
+	 * @param pObjekte Die zu transformierenden Objekte
+	 * @param pPositionen Die Positionen, je drei Werte (x, y, z) pro Objekt
+	 * @param pQuaternionen Die Rotationen als Quaternionen, je vier Werte
+	 *            (x, y, z, w) pro Objekt, oder <code>null</code> für keine
+	 *            Drehung. Die Quaternionen müssen nicht normiert sein.
+	 * @param pSkalierungen Die Skalierungsfaktoren in x-, y- und
+	 *            z-Richtung, je drei Werte pro Objekt, oder
+	 *            <code>null</code> für keine Skalierung
+	 * @throws IllegalArgumentException falls eines der Felder zu wenige
+	 *             Werte enthält
+	 */
+	public static void setzeTransformationenQuaternion(GLBewegbaresObjekt[] pObjekte, float[] pPositionen,
+			float[] pQuaternionen, float[] pSkalierungen) {
+		if (pQuaternionen != null)
+			checkLength(pQuaternionen, 4 * pObjekte.length, "pQuaternionen");
+		applyTransforms(pObjekte, pPositionen, pQuaternionen, false, pSkalierungen);
+	}
+
+	/* Composes translation * rotation * scale directly into each object's
+	 * matrix. The rotation matrix is reused for all objects, so nothing is
+	 * allocated per object.
+	 */
+	private static void applyTransforms(GLBewegbaresObjekt[] pObjekte, float[] pPositionen, float[] pRotationen,
+			boolean pEuler, float[] pSkalierungen) {
+		checkLength(pPositionen, 3 * pObjekte.length, "pPositionen");
+		if (pSkalierungen != null)
+			checkLength(pSkalierungen, 3 * pObjekte.length, "pSkalierungen");
+		final Quaternion rot = new Quaternion();
+		final float[] r = new float[16];
+		final float d2r = FloatUtil.PI / 180;
+		GLRenderer renderer = null;
+		float sx = 1, sy = 1, sz = 1;
+		float[] m;
+
+		rot.toMatrix(r, 0);
+		for (int i = 0, j = 0; i < pObjekte.length; ++i, j += 3) {
+			if (pRotationen != null) {
+				if (pEuler)
+					rot.setFromEuler(pRotationen[j] * d2r, pRotationen[j + 1] * d2r, pRotationen[j + 2] * d2r);
+				else
+					rot.set(pRotationen[4 * i], pRotationen[4 * i + 1], pRotationen[4 * i + 2],
+							pRotationen[4 * i + 3]).normalize();
+				rot.toMatrix(r, 0);
+			}
+			if (pSkalierungen != null) {
+				sx = pSkalierungen[j];
+				sy = pSkalierungen[j + 1];
+				sz = pSkalierungen[j + 2];
+			}
+
+			GLBewegbaresObjekt obj = pObjekte[i];
+			synchronized (obj) {
+				m = obj.transformationMatrix.getMatrix();
+				for (int k = 0; k < 3; ++k) {
+					m[k] = r[k] * sx;
+					m[4 + k] = r[4 + k] * sy;
+					m[8 + k] = r[8 + k] * sz;
+					m[12 + k] = pPositionen[j + k];
+				}
+				m[3] = m[7] = m[11] = 0;
+				m[15] = 1;
+				obj.transformUpdated();
+			}
+			renderer = nextRenderer(renderer, obj);
+		}
+		if (renderer != null)
+			renderer.scheduleRender();
+	}
+
+	/* Schedules pPrevious if the objects belong to different windows, and
+	 * returns the renderer which still has to be scheduled.
+	 */
+	private static GLRenderer nextRenderer(GLRenderer pPrevious, GLBewegbaresObjekt pObj) {
+		if (pPrevious != null && pPrevious != pObj.associatedRenderer)
+			pPrevious.scheduleRender();
+		return pObj.associatedRenderer;
+	}
+
+	private static void checkLength(float[] pArray, int pLength, String pName) {
+		if (pArray.length < pLength)
+			throw new IllegalArgumentException(pName + " muss mindestens " + pLength + " Werte enthalten!");
+	}
+
+	/* Queue the object once for the next frame, however often it changes
+	 * until then.
+	 */
+	private void publishTransform() {
+		if (!transformPublished) {
+			transformPublished = true;
+			associatedRenderer.publishTransform(this);
+		}
+	}
+
+	/* Called on the GL thread at the start of a frame, before the octree
+	 * is updated. Copies everything the frame needs to draw and to cull the
+	 * object, so neither has to lock it afterwards.
+	 */
+	void takeRenderSnapshot() {
+		synchronized (this) {
+			transformPublished = false;
+			System.arraycopy(transformationMatrix.getMatrix(), 0, renderMatrix, 0, 16);
+			localBoundsRadius = localBounds(localCenter, localExtent) ? localRadius(localExtent) : -1;
+		}
+		// outside of the lock, the octree never waits for an object
+		associatedRenderer.getSpatialIndex().markDirty(this);
+	}
+
+	/* Also called when the shape itself has changed, the bounds follow
+	 * with the next snapshot. Must be called with the object's lock held.
+	 */
+	void invalidateBounds() {
+		publishTransform();
+	}
+
+	/* Center and half extents of the object's axis aligned bounding box in
+	 * object coordinates. Objects which return false have no known bounds
+	 * and are never culled.
+	 */
+	boolean localBounds(float[] pCenter, float[] pExtent) {
+		return false;
+	}
+
+	/* Radius of the bounding sphere around the local center. The default
+	 * encloses the local box, shapes with a tighter sphere override this.
+	 */
+	float localRadius(float[] pExtent) {
+		return VectorUtil.normVec3(pExtent);
+	}
+
+	/* Bring boundsCenter, boundsRadius and boundsBox up to date with the
+	 * last render snapshot. Returns false if the object has no bounds.
+	 * Called by LooseOctree.update on the GL thread.
+	 */
+	boolean updateBounds() {
+		if (localBoundsRadius < 0) {
+			boundsRadius = -1;
+			return false;
+		}
+
+		final float[] m = renderMatrix, c = localCenter, e = localExtent;
+		float ex, ey, ez, scale = 0;
+		System.arraycopy(m, 0, boundsMatrix, 0, 16);
+		for (int i = 0; i < 3; ++i)
+			boundsCenter[i] = m[i] * c[0] + m[4 + i] * c[1] + m[8 + i] * c[2] + m[12 + i];
+		// extent of the transformed box along each world axis
+		ex = Math.abs(m[0]) * e[0] + Math.abs(m[4]) * e[1] + Math.abs(m[8]) * e[2];
+		ey = Math.abs(m[1]) * e[0] + Math.abs(m[5]) * e[1] + Math.abs(m[9]) * e[2];
+		ez = Math.abs(m[2]) * e[0] + Math.abs(m[6]) * e[1] + Math.abs(m[10]) * e[2];
+		boundsBox.setSize(boundsCenter[0] - ex, boundsCenter[1] - ey, boundsCenter[2] - ez,
+				boundsCenter[0] + ex, boundsCenter[1] + ey, boundsCenter[2] + ez);
+		// the sphere grows with the largest scale factor of the matrix
+		for (int i = 0; i < 12; i += 4)
+			scale = Math.max(scale, m[i] * m[i] + m[i + 1] * m[i + 1] + m[i + 2] * m[i + 2]);
+		boundsScale = (float) Math.sqrt(scale);
+		boundsRadius = Math.min(localBoundsRadius * boundsScale, (float) Math.sqrt(ex * ex + ey * ey + ez * ez));
+		return true;
+	}
+
+	/* Parameter t of the first hit of the ray o + t*d, given in object
+	 * coordinates, or RayIntersection.MISS. The default tests the local
+	 * bounding box, which is exact for boxes; other shapes override this.
+	 */
+	float intersectLocalRay(float[] o, float[] d) {
+		float[] c = new float[3], e = new float[3];
+		if (!localBounds(c, e))
+			return RayIntersection.MISS;
+		return RayIntersection.box(o, d, new float[] { c[0] - e[0], c[1] - e[1], c[2] - e[2] },
+				new float[] { c[0] + e[0], c[1] + e[1], c[2] + e[2] });
+	}
+
 	@Override
 	public synchronized void setzeDarstellungsModus(Darstellungsmodus dm) {
 		if (conf.displayMode != dm) {
@@ -151,4 +426,10 @@ public abstract class GLBewegbaresObjekt extends GLObjekt implements IGLTransfor
 	public double gibZ() {
 		return transformationMatrix.getMatrix()[14] / transformationMatrix.getMatrix()[15];
 	}
+
+	@Override
+	float viewDepth(float[] pEye, float[] pDir) {
+		final float[] m = renderMatrix;
+		return (m[12] - pEye[0]) * pDir[0] + (m[13] - pEye[1]) * pDir[1] + (m[14] - pEye[2]) * pDir[2];
+	}
 }
@@ -35,9 +35,10 @@ public class GLBoden extends GLObjekt implements IGLSurface {
 	void renderDelegate(GL2 gl, GLU glu) {
 		// don't render wireframe
 		if (!associatedCam.getWconf().aWireframe) {
-			double lTX = associatedCam.aPos[0] / 1000;
-			double lTY = associatedCam.aPos[1] / 10;
-			double lTZ = associatedCam.aPos[2] / 1000;
+			float[] eye = associatedRenderer.getViewEye();
+			double lTX = eye[0] / 1000;
+			double lTY = eye[1] / 10;
+			double lTZ = eye[2] / 1000;
 			double lG = 1000;
 
 			gl.glBegin(GL2.GL_TRIANGLE_FAN);
@@ -74,6 +75,7 @@ public class GLBoden extends GLObjekt implements IGLSurface {
 			gl.glVertex3d(1.42 * lG, -10, 0);
 
 			gl.glEnd();
+			associatedRenderer.getStateCache().countDraw(1, 8, 10);
 		}
 	}
 
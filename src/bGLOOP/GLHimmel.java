@@ -1,8 +1,6 @@
 package bGLOOP;
 
-import static java.lang.Math.PI;
-import static java.lang.Math.cos;
-import static java.lang.Math.sin;
+import java.util.logging.Level;
 
 import com.jogamp.opengl.GL2;
 import com.jogamp.opengl.glu.GLU;
@@ -14,6 +12,9 @@ import com.jogamp.opengl.glu.GLU;
  * @author R. Spillner
  */
 public class GLHimmel extends GLObjekt implements IGLSurface {
+	// the sky is drawn anew every frame, so its angles are looked up once
+	private final static int DIVISIONS = 16;
+	private final static TrigTable LATITUDE = TrigTable.of(2 * DIVISIONS), LONGITUDE = TrigTable.of(DIVISIONS);
 	private GLTextur aTex;
 
 	/**
@@ -39,30 +40,29 @@ public class GLHimmel extends GLObjekt implements IGLSurface {
 	void renderDelegate(GL2 gl, GLU glu) {
 		if (!associatedCam.getWconf().aWireframe) {
 			double radius = 100;
-			int divs = 16;
-			double quality = PI / divs;
+			int divs = DIVISIONS;
 			double lX, lZ;
 
 			// the GLHimmel sphere is permanently moved to the position of the
 			// camera.
 			// therefore it is displayed all the time
-			gl.glDisable(GL2.GL_DEPTH_TEST);
-			gl.glCullFace(GL2.GL_FRONT);
-			gl.glTexEnvi(GL2.GL_TEXTURE_ENV, GL2.GL_TEXTURE_ENV_MODE, GL2.GL_REPLACE);
-			synchronized (associatedCam) {
-				gl.glTranslated(associatedCam.aPos[0], associatedCam.aPos[1], associatedCam.aPos[2]);				
-			}
+			GLStateCache state = associatedRenderer.getStateCache();
+			state.disable(GL2.GL_DEPTH_TEST);
+			state.cullFace(GL2.GL_FRONT);
+			state.texEnvMode(GL2.GL_REPLACE);
+			float[] eye = associatedRenderer.getViewEye();
+			gl.glTranslatef(eye[0], eye[1], eye[2]);
 			gl.glRotatef(90, 1, 0, 0);
 
 			double lY1 = 1, lRT1 = 0, lY2, lRT2;
 			for (int i = 0; i < divs; ++i) { // 16; i++) {
-				lY2 = cos((i + 1) * quality);
-				lRT2 = sin((i + 1) * quality);
+				lY2 = LATITUDE.cos(i + 1);
+				lRT2 = LATITUDE.sin(i + 1);
 
 				gl.glBegin(GL2.GL_QUAD_STRIP);
 				for (int j = 0; j <= divs; j++) {
-					lX = cos(j * 2 * quality);
-					lZ = sin(j * 2 * quality);
+					lX = LONGITUDE.cos(j);
+					lZ = LONGITUDE.sin(j);
 
 					gl.glNormal3d(-lX * lRT1, -lZ * lRT1, -lY1);
 					gl.glTexCoord2d(1.0 * (divs - j) / divs, 1.0 * (divs - i) / divs);
@@ -75,10 +75,12 @@ public class GLHimmel extends GLObjekt implements IGLSurface {
 				lY1 = lY2;
 				lRT1 = lRT2;
 			}
-			gl.glEnable(GL2.GL_DEPTH_TEST);
-			gl.glCullFace(GL2.GL_BACK);
-			gl.glTexEnvi(GL2.GL_TEXTURE_ENV, GL2.GL_TEXTURE_ENV_MODE, GL2.GL_MODULATE);
-			log.fine("redrawing " + getClass().getName() + ":" + hashCode() );
+			state.countDraw(divs, 2 * divs * divs, 2 * divs * (divs + 1));
+			state.enable(GL2.GL_DEPTH_TEST);
+			state.cullFace(GL2.GL_BACK);
+			state.texEnvMode(GL2.GL_MODULATE);
+			if (log.isLoggable(Level.FINE))
+				log.fine("redrawing " + getClass().getName() + ":" + hashCode() );
 		}
 	}
 
@@ -4,6 +4,10 @@ import static java.lang.Math.cos;
 import static java.lang.Math.sin;
 import static java.lang.Math.toRadians;
 
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 import com.jogamp.opengl.math.FloatUtil;
@@ -32,8 +36,6 @@ public class GLKamera {
 	float[] aLookAt = { 0, 0, 0 };
 	float[] aUp = { 0, 1, 0 };
 
-	GLObjekt selectedObj = null;
-
 	/**
 	 * Erstellt eine bGLOOP-Kamera. Die Kamera öffnet ein Fenster mit den
 	 * Abmessungen aus der in der bGLOOP-Konfigurationsdatei eingetragenen
@@ -343,27 +345,90 @@ public class GLKamera {
 	 * <p>
 	 * Liegen an der Mausposition mehrere Objekte hintereinander, so wird das vorderste
 	 * Objekt zurückgegeben. Die Methode liefert <code>null</code>, wenn kein Objekt
-	 * an der Stelle liegt.
+	 * an der Stelle liegt. Gesucht wird in der Szene, wie sie zuletzt gezeichnet
+	 * wurde.
 	 * </p>
 	 * @param pFensterX x-Koordinate, an der nach einem GLObjekt gesucht wird
 	 * @param pFensterY y-Koordinate, an der nach einem GLObjekt gesucht wird
 	 * @return {@link GLObjekt}-Objekt oder <code>null</code>
 	 */
-	synchronized public GLObjekt gibObjekt(int pFensterX, int pFensterY) {
-		GLObjekt r;
-		log.info("scheduling an object selection run");
-		associatedRenderer.scheduleSelection(pFensterX, pFensterY);
-		try { // wait for selection mechanism to finish
-			wait();
-		} catch (InterruptedException e) {
-			e.printStackTrace();
-		}
+	public GLObjekt gibObjekt(int pFensterX, int pFensterY) {
+		return associatedRenderer.pick(pFensterX, pFensterY);
+	}
 
-		r = selectedObj;
-		selectedObj = null;
-		return r;
+	/** Wie {@link #gibObjekt(int, int) gibObjekt}, wartet aber nicht auf das
+	 * Ergebnis. Die Suche wird zu Beginn des nächsten Bildes durchgeführt,
+	 * zusammen mit allen anderen bis dahin angefragten Suchen. Das macht die
+	 * Methode geeignet für Abfragen bei jeder Mausbewegung, etwa um das Objekt
+	 * unter dem Mauszeiger hervorzuheben:
+	 * <pre>
+	 *   kamera.gibObjektAsynchron(maus.gibX(), maus.gibY())
+	 *         .thenAccept(o -&gt; { <b>if</b>(o != <b>null</b>) o.setzeFarbe(1, 0, 0); });
+	 * </pre>
+	 * <p>Die an das Ergebnis angehängten Aktionen laufen im Zeichen-Thread
+	 * von bGLOOP und sollten daher kurz sein.</p>
+	 * @param pFensterX x-Koordinate, an der nach einem GLObjekt gesucht wird
+	 * @param pFensterY y-Koordinate, an der nach einem GLObjekt gesucht wird
+	 * @return Ergebnis der Suche, das {@link GLObjekt} oder <code>null</code>
+	 */
+	public CompletableFuture<GLObjekt> gibObjektAsynchron(int pFensterX, int pFensterY) {
+		return associatedRenderer.schedulePick(pFensterX, pFensterY);
 	}
 	
+	/** Führt eine Aktion zu Beginn jedes Bildes aus, bevor die Szene
+	 * gezeichnet wird. Der Aktion wird die seit dem letzten Bild vergangene
+	 * Zeit in Sekunden übergeben. Damit lassen sich Animationen bauen, die
+	 * genau einmal pro Bild fortschreiten, ohne eigene Schleife mit
+	 * {@link Sys#warte(long) Sys.warte}:
+	 * <pre>
+	 *   kamera.jedesBild(dt -&gt; ufo.drehe(0, 0, 90 * dt));
+	 * </pre>
+	 * <p>Die Aktion läuft im Zeichen-Thread von bGLOOP und sollte daher
+	 * kurz sein. Sie kann mit {@link #entferneAktion(Consumer) entferneAktion}
+	 * wieder entfernt werden.</p>
+	 * @param pAktion Aktion, die die vergangene Zeit in Sekunden erhält
+	 */
+	public void jedesBild(Consumer<Double> pAktion) {
+		associatedRenderer.addFrameAction(0, pAktion, null);
+	}
+
+	/** Führt eine Aktion in festen Zeitschritten aus, unabhängig davon, wie
+	 * schnell die Bilder gezeichnet werden. Zu Beginn jedes Bildes wird die
+	 * Aktion so oft mit der Schrittweite <code>pSchrittweite</code> aufgerufen,
+	 * wie es der seit dem letzten Bild vergangenen Zeit entspricht &mdash; also
+	 * auch gar nicht oder mehrmals. Das ist z.B. für Physik-Simulationen
+	 * sinnvoll, die nur mit einer festen Schrittweite stabil laufen.
+	 * @param pSchrittweite Zeitschritt in Sekunden, größer als 0
+	 * @param pAktion Aktion, die die Schrittweite in Sekunden erhält
+	 */
+	public void jedenSchritt(double pSchrittweite, Consumer<Double> pAktion) {
+		jedenSchritt(pSchrittweite, pAktion, null);
+	}
+
+	/** Wie {@link #jedenSchritt(double, Consumer)}, zusätzlich wird einmal pro
+	 * Bild nach den Schritten <code>pZwischenbild</code> aufgerufen. Diese
+	 * Aktion erhält den Anteil eines Schritts (zwischen 0 und 1), der noch
+	 * nicht simuliert wurde. Damit kann die Darstellung zwischen den
+	 * letzten beiden simulierten Zuständen interpoliert werden, so dass
+	 * Bewegungen auch bei großen Schrittweiten flüssig aussehen.
+	 * @param pSchrittweite Zeitschritt in Sekunden, größer als 0
+	 * @param pAktion Aktion, die die Schrittweite in Sekunden erhält
+	 * @param pZwischenbild Aktion, die den Anteil des angefangenen Schritts erhält
+	 */
+	public void jedenSchritt(double pSchrittweite, Consumer<Double> pAktion, Consumer<Double> pZwischenbild) {
+		if (pSchrittweite <= 0)
+			throw new IllegalArgumentException("Die Schrittweite muss größer als 0 sein!");
+		associatedRenderer.addFrameAction(pSchrittweite, pAktion, pZwischenbild);
+	}
+
+	/** Entfernt eine mit {@link #jedesBild(Consumer) jedesBild} oder
+	 * {@link #jedenSchritt(double, Consumer) jedenSchritt} angemeldete Aktion.
+	 * @param pAktion die zu entfernende Aktion
+	 */
+	public void entferneAktion(Consumer<Double> pAktion) {
+		associatedRenderer.removeFrameAction(pAktion);
+	}
+
 	/** Gibt die x-Koordinate des Blickpunkts der Kamera zurück.
 	 * @return x-Koordinate des Blickpunkts
 	 */
@@ -420,6 +485,95 @@ public class GLKamera {
 		return aPos[2];
 	}
 
+	/** Gibt alle Objekte dieser Kamera zurück, die in die Kugel um den Punkt
+	 * <code>(pX|pY|pZ)</code> mit dem Radius <code>pRadius</code> hineinragen.
+	 * Berücksichtigt werden alle Körper (Kugeln, Quader, Meshes usw.), auch
+	 * unsichtbare, nicht aber Texte und Lichter.
+	 * <p>Die Suche verwendet einen räumlichen Index der Szene und ist damit
+	 * auch bei sehr vielen Objekten schnell. So lassen sich z.B. Kollisionen
+	 * eines Objekts mit allen anderen Objekten prüfen, ohne jedes Paar von
+	 * Objekten einzeln zu vergleichen:</p>
+	 * <pre>
+	 *   <b>for</b>(GLObjekt o : kamera.gibObjekteImUmkreis(x, y, z, 10))
+	 *     <b>if</b>(o != raumschiff)
+	 *       o.loesche();
+	 * </pre>
+	 * <p>Wie beim Zeichnen gelten die Positionen des zuletzt gezeichneten
+	 * Bildes; eine gerade erst ausgeführte Bewegung wird mit dem nächsten Bild
+	 * berücksichtigt.</p>
+	 * @param pX x-Koordinate des Mittelpunkts
+	 * @param pY y-Koordinate des Mittelpunkts
+	 * @param pZ z-Koordinate des Mittelpunkts
+	 * @param pRadius Radius der Kugel
+	 * @return Array mit den gefundenen Objekten, leer wenn es keine gibt
+	 */
+	public GLObjekt[] gibObjekteImUmkreis(double pX, double pY, double pZ, double pRadius) {
+		ArrayList<GLObjekt> result = new ArrayList<GLObjekt>();
+		associatedRenderer.getSpatialIndex().collectInRadius((float) pX, (float) pY, (float) pZ,
+				(float) pRadius, result);
+		return result.toArray(new GLObjekt[result.size()]);
+	}
+
+	/** Gibt das Objekt dieser Kamera zurück, das dem Punkt <code>(pX|pY|pZ)</code>
+	 * am nächsten liegt. Gemessen wird der Abstand zur Oberfläche einer das
+	 * Objekt umschließenden Kugel. Wie bei
+	 * {@link #gibObjekteImUmkreis(double, double, double, double) gibObjekteImUmkreis}
+	 * werden Texte und Lichter nicht berücksichtigt, und es gelten die
+	 * Positionen des zuletzt gezeichneten Bildes.
+	 * @param pX x-Koordinate des Punkts
+	 * @param pY y-Koordinate des Punkts
+	 * @param pZ z-Koordinate des Punkts
+	 * @return Das nächste Objekt oder <code>null</code>, wenn es keine Objekte gibt
+	 */
+	public GLObjekt gibNaechstesObjekt(double pX, double pY, double pZ) {
+		return associatedRenderer.getSpatialIndex().findNearest((float) pX, (float) pY, (float) pZ);
+	}
+
+	/** Gibt die Anzahl der Objekte zurück, die im zuletzt gezeichneten Bild
+	 * dargestellt wurden. Unsichtbare Objekte und Objekte außerhalb des
+	 * Sichtbereichs der Kamera werden nicht mitgezählt.
+	 * @return Anzahl der gezeichneten Objekte
+	 */
+	public int gibAnzahlGezeichneterObjekte() {
+		return associatedRenderer.getDrawnObjects();
+	}
+
+	/** Gibt die Anzahl der sichtbaren Objekte zurück, die im zuletzt
+	 * gezeichneten Bild nicht gezeichnet wurden, weil sie vollständig
+	 * außerhalb des Sichtbereichs der Kamera lagen.
+	 * @return Anzahl der ausgelassenen Objekte
+	 */
+	public int gibAnzahlVerworfenerObjekte() {
+		return associatedRenderer.getCulledObjects();
+	}
+
+	/** Gibt die Kennzahlen des zuletzt gezeichneten Bildes zurück, z.B.
+	 * die Anzahl der Zeichenaufrufe und die Rechenzeit.
+	 * @return Statistik des letzten Bildes oder <code>null</code>, falls
+	 * noch kein Bild gezeichnet wurde
+	 */
+	public GLStatistik gibStatistik() {
+		return associatedRenderer.getStatistics().getLatest();
+	}
+
+	/** Meldet einen Beobachter an, der nach jedem gezeichneten Bild dessen
+	 * Statistik erhält. Der Beobachter wird im Zeichen-Thread aufgerufen
+	 * und sollte daher schnell zurückkehren. Wirft er eine Ausnahme, wird er
+	 * abgemeldet.
+	 * @param pBeobachter Beobachter, z.B. <code>s -&gt; System.out.println(s)</code>
+	 */
+	public void beobachteStatistik(Consumer<GLStatistik> pBeobachter) {
+		associatedRenderer.getStatistics().addListener(pBeobachter);
+	}
+
+	/** Meldet einen mit {@link #beobachteStatistik(Consumer)} angemeldeten
+	 * Beobachter wieder ab.
+	 * @param pBeobachter Der abzumeldende Beobachter
+	 */
+	public void entferneStatistikBeobachter(Consumer<GLStatistik> pBeobachter) {
+		associatedRenderer.getStatistics().removeListener(pBeobachter);
+	}
+
 	/** Erstellt ein Bildschirmfoto und speichert es unter dem in der
 	 * bGLOOP-Konfigurationsdatei festgelegten Standardnamen.
 	 */
@@ -436,6 +590,73 @@ public class GLKamera {
 		associatedRenderer.scheduleScreenshot(pDateiname);
 	}
 
+	/** Erstellt ein Bildschirmfoto des nächsten Bildes, ohne es zu
+	 * speichern. Die Methode kehrt sofort zurück; das Bild steht zur
+	 * Verfügung, sobald es aus der Grafikkarte gelesen wurde, z.B. mit
+	 * <code>gibBildschirmfoto().join()</code>.
+	 * 
+	 * @return Das Bildschirmfoto, sobald es vorliegt
+	 */
+	public CompletableFuture<BufferedImage> gibBildschirmfoto() {
+		return associatedRenderer.scheduleScreenshotImage();
+	}
+
+	/** Startet eine Aufnahme aller folgenden Bilder. Siehe
+	 * {@link #starteAufnahme(String, int, boolean)}; es wird jedes Bild
+	 * aufgenommen, und Bilder werden verworfen, wenn das Speichern nicht
+	 * mitkommt.
+	 * 
+	 * @param pZiel Dateiname des Videos oder Präfix der Bilddateien
+	 */
+	public void starteAufnahme(String pZiel) {
+		starteAufnahme(pZiel, 1, true);
+	}
+
+	/** Startet eine Aufnahme, die jedes n-te gezeichnete Bild speichert,
+	 * bis {@link #stoppeAufnahme()} aufgerufen wird. Während der Aufnahme
+	 * wird ständig neu gezeichnet.<br>
+	 * Endet <code>pZiel</code> auf <code>.rgb</code>, so werden alle Bilder
+	 * hintereinander als unkomprimierte RGB-Daten in diese Datei
+	 * geschrieben (z.B. für <code>ffmpeg -f rawvideo -pix_fmt rgb24</code>).
+	 * Sonst wird jedes Bild in eine eigene Datei <code>pZiel-00000.png</code>,
+	 * <code>pZiel-00001.png</code>, ... im Format der Bildschirmfotos
+	 * gespeichert.
+	 * 
+	 * @param pZiel Dateiname des Videos oder Präfix der Bilddateien
+	 * @param pJedesNteBild 1 nimmt jedes Bild auf, 2 jedes zweite usw.
+	 * @param pBilderVerwerfen Wenn <code>true</code>, werden Bilder
+	 *            ausgelassen, wenn das Speichern nicht mitkommt. Wenn
+	 *            <code>false</code>, wird das Zeichnen stattdessen
+	 *            verlangsamt, so dass kein Bild verloren geht.
+	 * @throws IllegalStateException falls bereits eine Aufnahme läuft
+	 */
+	public void starteAufnahme(String pZiel, int pJedesNteBild, boolean pBilderVerwerfen) {
+		if (pJedesNteBild < 1)
+			throw new IllegalArgumentException("Es muss mindestens jedes Bild aufgenommen werden!");
+		associatedRenderer.startRecording(pZiel, pJedesNteBild, pBilderVerwerfen);
+	}
+
+	/** Beendet die laufende Aufnahme. Die Methode wartet, bis alle
+	 * aufgenommenen Bilder gespeichert sind.
+	 * <p>
+	 * Die Methode darf auch aus Aktionen aufgerufen werden, die bGLOOP
+	 * selbst beim Zeichnen ausführt (z.B. {@link #jedesBild},
+	 * {@link #jedenSchritt}, Rückmeldungen von {@link #gibObjektAsynchron}
+	 * oder Statistik-Beobachter). Die Aufnahme wird dann sofort beendet;
+	 * das Zeichnen hält an, bis alle Bilder gespeichert sind.
+	 * </p>
+	 * <p>
+	 * Wird nicht mehr gezeichnet, z.B. weil das Fenster geschlossen wurde,
+	 * gehen die zuletzt aufgenommenen, noch nicht ausgelesenen Bilder
+	 * verloren.
+	 * </p>
+	 * 
+	 * @return Anzahl der gespeicherten Bilder
+	 */
+	public int stoppeAufnahme() {
+		return associatedRenderer.stopRecording();
+	}
+
 	/* The method the scalar product of the lookAt vector with the up vector. If all is
 	 * good, this should be very close to 0. 
 	 * If checkCameraVectors() > 2 * FloatUtil.EPSILON, the camera vectors
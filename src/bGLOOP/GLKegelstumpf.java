@@ -1,11 +1,6 @@
 package bGLOOP;
 
-import com.jogamp.opengl.GL2;
-import com.jogamp.opengl.glu.GLU;
-import com.jogamp.opengl.math.VectorUtil;
-
 import static java.lang.Math.max;
-import static java.lang.Math.min;
 
 /**
  * Ein Kegelstumpf ist ein Kegel, dessen Spitze abgeschitten wurde. Die
@@ -68,25 +63,22 @@ public class GLKegelstumpf extends GLPrismoid {
 		aEcken = 0;
 	}
 
-	private void setQualityBasedOnCameraDistance() {
-		float[] trl = transformationMatrix.getMatrix();
-		float dist = VectorUtil.normVec3(new float[] {
-				(float)(trl[12] - associatedCam.aPos[0]),
-				(float)(trl[13] - associatedCam.aPos[1]),
-				(float)(trl[14] - associatedCam.aPos[2])
-			});
-
-		aEcken = (int) (-1.25 * dist / max(aRad1, aRad2) + 50);
-		aEcken = max(min(aEcken, 50), 10);
+	/* Without a number of corners set through setzeQualitaet, the base
+	 * circles are divided like the circles of a sphere.
+	 */
+	@Override
+	int corners() {
+		return lodDivisions(aEcken > 0 ? aEcken : conf.xDivision);
+	}
 
-		needsRedraw = true;
+	@Override
+	boolean hasLevelsOfDetail() {
+		return true;
 	}
 
 	@Override
-	void render(GL2 gl, GLU glu) {
-		if (aEcken == 0)
-			setQualityBasedOnCameraDistance();
-		super.render(gl, glu);
+	double lodError(int pLevel) {
+		return chordError(max(aRad1, aRad2), lodDivisions(aEcken > 0 ? aEcken : conf.xDivision, pLevel));
 	}
 
 	@Override
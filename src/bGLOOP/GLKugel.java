@@ -1,17 +1,12 @@
 package bGLOOP;
 
-import static java.lang.Math.PI;
-import static java.lang.Math.cos;
-import static java.lang.Math.sin;
-
-import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 
-import com.jogamp.common.nio.Buffers;
-import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL2;
 import com.jogamp.opengl.glu.GLU;
 
+import static java.lang.Math.min;
+
 /**
  * Ein Kugelmodell.<br>
  * <img alt="Abbildung Kugel" src="./doc-files/Kugel-1.png">
@@ -20,8 +15,6 @@ import com.jogamp.opengl.glu.GLU;
  */
 public class GLKugel extends TransformableSurfaceObject {
 	private double aRad;
-	private FloatBuffer fb;
-	private int[] firstOffsets, countOffsets;
 
 	/**
 	 * Erzeugt eine Kugel mit Mittelpunkt <code>M(pMX, pMY, pMZ)</code> und
@@ -70,137 +63,129 @@ public class GLKugel extends TransformableSurfaceObject {
 	@Override
 	void generateDisplayList_GLU(GL2 gl, GLU glu) {
 		// gl.glColor3f(1, 1, 1);
-		gl.glNewList(bufferName, GL2.GL_COMPILE);
 		glu.gluQuadricNormals(quadric, GLU.GLU_SMOOTH);
 		glu.gluQuadricTexture(quadric, true);
-		glu.gluSphere(quadric, aRad, conf.xDivision, conf.yDivision);
+		glu.gluSphere(quadric, aRad, lodDivisions(conf.xDivision), lodDivisions(conf.yDivision));
 		// glu.gluDeleteQuadric(quadric);
-		gl.glEndList();
 	}
 
 	@Override
 	void generateDisplayList_GL(GL2 gl) {
+		int nx = lodDivisions(conf.xDivision), ny = lodDivisions(conf.yDivision);
 		double lX, lZ;
-		float qx = (float) (PI / conf.xDivision);
-		float qy = (float) (2 * PI / conf.yDivision);
+		// from the north to the south pole is half a turn
+		TrigTable latitude = TrigTable.of(2 * nx), longitude = TrigTable.of(ny);
 
-		gl.glNewList(bufferName, GL2.GL_COMPILE);
 		double ring1Y = 1, ring1X = 0, ring2Y, ring2X;
-		for (int i = 0; i < conf.xDivision; ++i) {
-			ring2Y = cos((i + 1) * qx);
-			ring2X = sin((i + 1) * qx);
+		for (int i = 0; i < nx; ++i) {
+			ring2Y = latitude.cos(i + 1);
+			ring2X = latitude.sin(i + 1);
 
 			// need to go around one whole turn
 			gl.glBegin(GL2.GL_QUAD_STRIP);
-			for (int j = 0; j <= conf.yDivision; j++) {
-				lX = cos(j * qy);
-				lZ = sin(j * qy);
+			for (int j = 0; j <= ny; j++) {
+				lX = longitude.cos(j);
+				lZ = longitude.sin(j);
 
 				// first vertex of the quad is the third of the previous
 				gl.glNormal3d(lX * ring1X, lZ * ring1X, ring1Y);
-				gl.glTexCoord2d(1.0 * (conf.yDivision - j) / conf.yDivision,
-						1.0 * (conf.yDivision - i) / conf.yDivision);
+				gl.glTexCoord2d(1.0 * (ny - j) / ny, 1.0 * (ny - i) / ny);
 				gl.glVertex3d(lX * aRad * ring1X, lZ * aRad * ring1X, ring1Y * aRad);
 
 				// second vertex of the quad is the fourth of the previous
 				gl.glNormal3d(lX * ring2X, lZ * ring2X, ring2Y);
-				gl.glTexCoord2d(1.0 * (conf.yDivision - j) / conf.yDivision,
-						1.0 * (conf.yDivision - i - 1) / conf.yDivision);
+				gl.glTexCoord2d(1.0 * (ny - j) / ny, 1.0 * (ny - i - 1) / ny);
 				gl.glVertex3d(lX * aRad * ring2X, lZ * aRad * ring2X, ring2Y * aRad);
 			}
 			gl.glEnd();
 			ring1Y = ring2Y;
 			ring1X = ring2X;
 		}
-		gl.glEndList();
 	}
 
 	@Override
-	void drawVBO(GL2 gl) {
-		gl.glBindBuffer( GL.GL_ARRAY_BUFFER, bufferName);
-        gl.glEnableClientState( GL2.GL_VERTEX_ARRAY );
-        gl.glEnableClientState( GL2.GL_NORMAL_ARRAY );
-        gl.glEnableClientState( GL2.GL_TEXTURE_COORD_ARRAY);
-        gl.glNormalPointer(GL.GL_FLOAT, 8 * Buffers.SIZEOF_FLOAT, 0 );
-        gl.glTexCoordPointer( 2, GL.GL_FLOAT, 8 * Buffers.SIZEOF_FLOAT, 3 * Buffers.SIZEOF_FLOAT );
-        gl.glVertexPointer(3, GL.GL_FLOAT, 8 * Buffers.SIZEOF_FLOAT, 5 * Buffers.SIZEOF_FLOAT);
-        gl.glMultiDrawArrays(GL2.GL_TRIANGLE_STRIP, firstOffsets, 0, countOffsets, 0, conf.xDivision);
-
-        gl.glDisableClientState( GL2.GL_VERTEX_ARRAY );
-        gl.glDisableClientState( GL2.GL_NORMAL_ARRAY );
-        gl.glDisableClientState( GL2.GL_TEXTURE_COORD_ARRAY);
-
-        // unbind buffer
-		gl.glBindBuffer( GL.GL_ARRAY_BUFFER, 0);
+	Tessellation tessellate() {
+		return tessellateFor(geometryKey());
 	}
 
+	/* Reads the radius and the divisions only from pKey. */
 	@Override
-	void generateVBO(GL2 gl) {
-		int[] t = new int[1];
-		if(fb != null && bufferName != -1) {
-			t[0] = bufferName;
-			gl.glDeleteBuffers(1, t, 0);
-			fb.clear();
-		}
-		gl.glGenBuffers(1, t, 0);
-		bufferName = t[0];
-		firstOffsets = new int[conf.xDivision];
-		countOffsets = new int[conf.xDivision];
-		for(int i=0; i<conf.xDivision; ++i) {
-			firstOffsets[i] = 2 * (conf.yDivision + 1) * i;
-			countOffsets[i] = 2 * (conf.yDivision + 1);
-		}
-		int vertexBufferSize = 16 * conf.xDivision * (conf.yDivision + 1) * Buffers.SIZEOF_FLOAT;
-
-		gl.glBindBuffer(GL.GL_ARRAY_BUFFER, bufferName);
-		gl.glBufferData(GL.GL_ARRAY_BUFFER, vertexBufferSize, null,
-				GL2.GL_STATIC_DRAW);
-		fb = gl.glMapBuffer(GL.GL_ARRAY_BUFFER, GL.GL_WRITE_ONLY).order(ByteOrder.nativeOrder())
-				.asFloatBuffer();
-
-		// ready for drawing (to buffer)
-		float lX, lZ;
-		float qx = (float)(PI / conf.xDivision);
-		float qy = (float)(2*PI / conf.yDivision);
-		float ring1Y = 1, ring1X = 0, ring2Y, ring2X;
-		for (int i = 0; i < conf.xDivision; ++i) { // conf.xDivision; i++) {
-			ring2Y = (float)cos((i + 1) * qx);
-			ring2X = (float)sin((i + 1) * qx);
+	Tessellation tessellateFor(GeometryCache.Key pKey) {
+		int nx = (int) pKey.param(1), ny = (int) pKey.param(2);
+		Tessellation t = new Tessellation(vboVertexCount(pKey));
+		fillVBO(t.vertices, pKey);
+		t.setGridIndices(nx, ny, associatedRenderer.getGeometryCache().hasPrimitiveRestart());
+		return t;
+	}
 
-			// need to go around one whole turn
-			for (int j = 0; j <= conf.yDivision; j++) {
-				lX = (float) cos(j * qy);
-				lZ = (float) sin(j * qy);
-				// vertex #1
-				// normals
-				fb.put(lX * ring1X);
-				fb.put(lZ * ring1X);
-				fb.put(ring1Y);
-				// texture coordinates
-				fb.put(1f * (conf.yDivision - j) / conf.yDivision);
-				fb.put(1f * (conf.yDivision - i) / conf.yDivision);
-				// vertex
-				fb.put(lX * (float) aRad * ring1X);
-				fb.put(lZ * (float) aRad * ring1X);
-				fb.put(ring1Y * (float) aRad);
+	/* Number of vertices written by fillVBO. */
+	int vboVertexCount(GeometryCache.Key pKey) {
+		return ((int) pKey.param(1) + 1) * ((int) pKey.param(2) + 1);
+	}
 
-				// vertex #2
+	/* Writes the vertices for tessellate, see Geometry for the layout:
+	 * one row per ring from the north to the south pole, each going around
+	 * one whole turn.
+	 */
+	void fillVBO(FloatBuffer fb, GeometryCache.Key pKey) {
+		double rad = pKey.param(0);
+		int nx = (int) pKey.param(1), ny = (int) pKey.param(2);
+		float lX, lZ, ringY, ringX;
+		TrigTable latitude = TrigTable.of(2 * nx), longitude = TrigTable.of(ny);
+		for (int i = 0; i <= nx; ++i) {
+			ringY = (float) latitude.cos(i);
+			ringX = (float) latitude.sin(i);
+			for (int j = 0; j <= ny; j++) {
+				lX = (float) longitude.cos(j);
+				lZ = (float) longitude.sin(j);
 				// normals
-				fb.put(lX * ring2X);
-				fb.put(lZ * ring2X);
-				fb.put(ring2Y);
+				fb.put(lX * ringX);
+				fb.put(lZ * ringX);
+				fb.put(ringY);
 				// texture coordinates
-				fb.put(1f * (conf.yDivision - j) / conf.yDivision);
-				fb.put(1f * (conf.yDivision - i - 1) / conf.yDivision);
+				fb.put(1f * (ny - j) / ny);
+				fb.put(1f * (ny - i) / ny);
 				// vertex
-				fb.put(lX * (float) aRad * ring2X);
-				fb.put(lZ * (float) aRad * ring2X);
-				fb.put(ring2Y * (float) aRad);
+				fb.put(lX * (float) rad * ringX);
+				fb.put(lZ * (float) rad * ringX);
+				fb.put(ringY * (float) rad);
 			}
-			ring1Y = ring2Y;
-			ring1X = ring2X;
 		}
-		gl.glUnmapBuffer(GL.GL_ARRAY_BUFFER);
-		needsRedraw = false;
+	}
+
+	@Override
+	boolean localBounds(float[] pCenter, float[] pExtent) {
+		pCenter[0] = pCenter[1] = pCenter[2] = 0;
+		pExtent[0] = pExtent[1] = pExtent[2] = (float) aRad;
+		return true;
+	}
+
+	@Override
+	float localRadius(float[] pExtent) {
+		return (float) aRad;
+	}
+
+	@Override
+	float intersectLocalRay(float[] o, float[] d) {
+		return RayIntersection.sphere(o, d, 0, 0, 0, (float) aRad);
+	}
+
+	@Override
+	boolean hasLevelsOfDetail() {
+		return true;
+	}
+
+	/* A meridian is half a circle in nx steps, so it deviates like a full
+	 * circle in 2 * nx steps.
+	 */
+	@Override
+	double lodError(int pLevel) {
+		return chordError(aRad, min(2 * lodDivisions(conf.xDivision, pLevel), lodDivisions(conf.yDivision, pLevel)));
+	}
+
+	@Override
+	GeometryCache.Key geometryKey() {
+		return new GeometryCache.Key(GLKugel.class, conf.objectRenderMode, aRad, lodDivisions(conf.xDivision),
+				lodDivisions(conf.yDivision));
 	}
 }
\ No newline at end of file
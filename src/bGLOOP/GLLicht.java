@@ -1,5 +1,6 @@
 package bGLOOP;
 
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.jogamp.opengl.GL2;
@@ -120,10 +121,11 @@ public class GLLicht extends DisplayItem implements IGLColorable {
 			gl.glLightf(LIGHT_NUMS[id], GL2.GL_CONSTANT_ATTENUATION, attenuation[0]);
 			gl.glLightf(LIGHT_NUMS[id], GL2.GL_LINEAR_ATTENUATION, attenuation[1]);
 			gl.glLightf(LIGHT_NUMS[id], GL2.GL_QUADRATIC_ATTENUATION, attenuation[2]);
-			gl.glEnable(LIGHT_NUMS[id]);
-			log.fine("rendering light " + id);
+			associatedRenderer.getStateCache().enable(LIGHT_NUMS[id]);
+			if (log.isLoggable(Level.FINE))
+				log.fine("rendering light " + id);
 		} else
-			gl.glDisable(LIGHT_NUMS[id]);
+			associatedRenderer.getStateCache().disable(LIGHT_NUMS[id]);
 	}
 
 	/** Setzt die Position der Lichtquelle im Koordinatensystem.
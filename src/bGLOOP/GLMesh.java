@@ -4,6 +4,12 @@ import static java.lang.Math.max;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import com.jogamp.opengl.GL2;
 import com.jogamp.opengl.glu.GLU;
@@ -13,6 +19,7 @@ import bGLOOP.mesh.builder.Build;
 import bGLOOP.mesh.builder.BuilderPOJOs.Face;
 import bGLOOP.mesh.builder.BuilderPOJOs.FaceVertex;
 import bGLOOP.mesh.builder.BuilderPOJOs.Material;
+import bGLOOP.mesh.builder.BuilderPOJOs.VertexGeometric;
 
 /** <p>Klasse, die ein Mesh im OBJ-Format interpretiert und im bGLOOP-Kontext als Objekt
  * verfügbar macht. Die Klasse unterstützt Mesh-Beschreibungen im
@@ -32,12 +39,43 @@ import bGLOOP.mesh.builder.BuilderPOJOs.Material;
  * @see <a href="https://de.wikipedia.org/wiki/Wavefront_OBJ">Wavefront-OBJ-Format</a>
  */
 public class GLMesh extends TransformableSurfaceObject {
+	/* Material and texture of one index range of the VBO. */
+	private static final class Batch {
+		// null for faces without a material, the object's own is used then
+		final float[] ambient, diffuse, specular;
+		final float shininess;
+		final GLTextur texture;
+
+		Batch(Material m, GLTextur pTexture) {
+			if (m == null) {
+				ambient = diffuse = specular = null;
+				shininess = 0;
+				texture = null;
+				return;
+			}
+			ambient = rgba(m.ka.getFloatv());
+			diffuse = rgba(m.kd.getFloatv());
+			specular = rgba(m.ks.getFloatv());
+			shininess = (float) m.nsExponent;
+			texture = pTexture;
+		}
+
+		private static float[] rgba(float[] pRGB) {
+			float[] c = Arrays.copyOf(pRGB, 4);
+			c[3] = 1;
+			return c;
+		}
+	}
+
 	private boolean parseOk = false;
 	private Build meshBuild;
 	private double aMeshScale, aMaxCoordScale;
 	private double[] meshDiameter = new double[3];
 	private File meshFile;
-	// private HashMap<String, GLTextur> texMap;
+	// one per index range of the VBO, see tessellate
+	private Batch[] batches;
+	// the textures of the materials by file name, see materialTexture
+	private final HashMap<String, GLTextur> texMap = new HashMap<String, GLTextur>(5);
 
 	/** Erstellt ein <code>GLMesh</code>-Objekt. Dazu wird eine Mesh-Datei
 	 * im Wavefront-OBJ-Format verwendet.
@@ -61,7 +99,6 @@ public class GLMesh extends TransformableSurfaceObject {
 	 */
 	public GLMesh(String pDateiname, double pMeshMaxScale) {
 		super();
-		// texMap = new HashMap<String, GLTextur>(5);
 		try {
 			new Parse(meshBuild = new Build(), meshFile = new File(pDateiname));
 			parseOk = true;
@@ -75,7 +112,9 @@ public class GLMesh extends TransformableSurfaceObject {
 		} catch (IOException fnfe) {
 			fnfe.printStackTrace();
 		}
-		conf.objectRenderMode = Rendermodus.RENDER_GL;
+		// there are no GLU primitives for meshes
+		if (conf.objectRenderMode == Rendermodus.RENDER_GLU)
+			conf.objectRenderMode = Rendermodus.RENDER_GL;
 		setzeDarstellungsModus(conf.displayMode);
 		aVisible = true;
 	}
@@ -113,18 +152,214 @@ public class GLMesh extends TransformableSurfaceObject {
 	}
 
 	@Override
-	void generateVBO(GL2 gl) {
-		generateDisplayList_GL(gl);
+	void generateVBO(GL2 gl, Geometry g) {
+		if (parseOk)
+			super.generateVBO(gl, g);
+		else
+			compileDisplayList(gl, null, g, false);
 	}
 
+	/* The vertices are those of meshBuild.faceVerticeList, every
+	 * combination of position, normal and texture coordinate of the OBJ
+	 * file once. The faces are split into fans of triangles and grouped by
+	 * material, so each material with its texture is one contiguous range
+	 * of indices and the mesh is drawn with one glDrawElements per
+	 * material.
+	 */
 	@Override
-	void generateDisplayList_GLU(GL2 gl, GLU glu) {
-		generateDisplayList_GL(gl);
+	Tessellation tessellate() {
+		ArrayList<FaceVertex> vertexList = meshBuild.faceVerticeList;
+		LinkedHashMap<Material, ArrayList<Face>> groups = new LinkedHashMap<Material, ArrayList<Face>>();
+		ArrayList<Face> group;
+		int indexCount = 0;
+
+		for (Face fa : meshBuild.faces) {
+			if ((group = groups.get(fa.material)) == null)
+				groups.put(fa.material, group = new ArrayList<Face>());
+			group.add(fa);
+			indexCount += 3 * max(fa.vertices.size() - 2, 0);
+		}
+
+		int[] indices = new int[indexCount], first = new int[groups.size()], count = new int[groups.size()];
+		// sum of the normals of the adjacent triangles, for vertices
+		// without a normal in the file
+		float[] normals = new float[3 * vertexList.size()];
+		Batch[] b = new Batch[groups.size()];
+		int k = 0, range = 0;
+		for (Map.Entry<Material, ArrayList<Face>> e : groups.entrySet()) {
+			first[range] = k;
+			for (Face fa : e.getValue())
+				for (int i = 2; i < fa.vertices.size(); ++i) {
+					indices[k] = fa.vertices.get(0).index;
+					indices[k + 1] = fa.vertices.get(i - 1).index;
+					indices[k + 2] = fa.vertices.get(i).index;
+					addTriangleNormal(vertexList, indices, k, normals);
+					k += 3;
+				}
+			count[range] = k - first[range];
+			b[range++] = new Batch(e.getKey(), materialTexture(e.getKey()));
+		}
+
+		Tessellation t = new Tessellation(vertexList.size());
+		fillVBO(t.vertices, vertexList, normals);
+		t.setTriangleIndices(indices, first, count);
+		batches = b;
+		return t;
+	}
+
+	/* The texture of material m, or null if it has none. Created once per
+	 * file and kept, so a new tessellation or display list reuses it.
+	 * Called on the GL thread only.
+	 */
+	private GLTextur materialTexture(Material m) {
+		if (m == null || m.mapKdFilename == null)
+			return null;
+		GLTextur tex = texMap.get(m.mapKdFilename);
+		if (tex == null)
+			texMap.put(m.mapKdFilename, tex = new GLTextur(new File(meshFile.getParentFile(), m.mapKdFilename)));
+		return tex;
 	}
 
+	/* The cross product of two edges is the normal weighted with the area
+	 * of the triangle.
+	 */
+	private static void addTriangleNormal(ArrayList<FaceVertex> pVertices, int[] pIndices, int pFirst,
+			float[] pNormals) {
+		VertexGeometric a = pVertices.get(pIndices[pFirst]).v, b = pVertices.get(pIndices[pFirst + 1]).v,
+				c = pVertices.get(pIndices[pFirst + 2]).v;
+		float ux = b.x - a.x, uy = b.y - a.y, uz = b.z - a.z;
+		float vx = c.x - a.x, vy = c.y - a.y, vz = c.z - a.z;
+		float nx = uy * vz - uz * vy, ny = uz * vx - ux * vz, nz = ux * vy - uy * vx;
+		for (int i = pFirst; i < pFirst + 3; ++i) {
+			pNormals[3 * pIndices[i]] += nx;
+			pNormals[3 * pIndices[i] + 1] += ny;
+			pNormals[3 * pIndices[i] + 2] += nz;
+		}
+	}
+
+	/* Writes the vertices for tessellate, see Geometry for the layout.
+	 * Vertices without texture coordinates get the same planar ones as in
+	 * the display list, so a texture set with setzeTextur covers them.
+	 */
+	private void fillVBO(FloatBuffer fb, ArrayList<FaceVertex> pVertices, float[] pNormals) {
+		float nx, ny, nz, l;
+		int i = 0;
+		for (FaceVertex fv : pVertices) {
+			if (fv.n != null) {
+				nx = fv.n.x;
+				ny = fv.n.y;
+				nz = fv.n.z;
+			} else {
+				nx = pNormals[i];
+				ny = pNormals[i + 1];
+				nz = pNormals[i + 2];
+				l = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+				if (l > 0) {
+					nx /= l;
+					ny /= l;
+					nz /= l;
+				}
+			}
+			i += 3;
+			fb.put(nx);
+			fb.put(ny);
+			fb.put(nz);
+			if (fv.t != null) {
+				fb.put(fv.t.u);
+				fb.put(fv.t.v);
+			} else {
+				fb.put((float) ((fv.v.x + meshBuild.vertexCoordinateRanges[0]) / aMaxCoordScale));
+				fb.put((float) ((fv.v.z + meshBuild.vertexCoordinateRanges[4]) / aMaxCoordScale));
+			}
+			fb.put(fv.v.x);
+			fb.put(fv.v.y);
+			fb.put(fv.v.z);
+		}
+	}
+
+	/* With a texture set by the user, the whole mesh is drawn with the
+	 * object's material and texture, as in the display list. Otherwise
+	 * every range is drawn with its own material and texture; the state
+	 * cache drops what does not change between them.
+	 */
 	@Override
-	void drawVBO(GL2 gl) {
-		gl.glCallList(bufferName);
+	void drawGeometry(GL2 gl, Geometry g) {
+		GLStateCache state = associatedRenderer.getStateCache();
+		GLTextur userTexture = gibTextur();
+
+		if (g.displayList) {
+			g.draw(gl, state);
+			// the display list sets the materials and textures of the mesh
+			state.invalidateMaterial();
+			state.invalidateTexture();
+			return;
+		}
+		if (userTexture != null && userTexture.isReady()) {
+			g.draw(gl, state);
+			return;
+		}
+		for (int i = 0; i < batches.length; ++i) {
+			Batch b = batches[i];
+			if (b.texture != null)
+				b.texture.load(gl);
+			if (b.texture != null && b.texture.isReady())
+				state.bindTexture(b.texture.aTexturImpl.getTexture());
+			else
+				state.disable(GL2.GL_TEXTURE_2D);
+			if (b.ambient != null)
+				state.material(b.ambient, b.diffuse, b.specular, aEmission, b.shininess);
+			else
+				loadMaterial(gl);
+			g.drawRange(gl, state, i);
+		}
+		// like the display list, leave texturing off
+		state.disable(GL2.GL_TEXTURE_2D);
+	}
+
+	@Override
+	boolean localBounds(float[] pCenter, float[] pExtent) {
+		if (!parseOk)
+			return false;
+		// the parser has moved the center of the mesh to the origin
+		pCenter[0] = pCenter[1] = pCenter[2] = 0;
+		for (int i = 0; i < 3; ++i)
+			pExtent[i] = (float) meshDiameter[i] / 2;
+		return true;
+	}
+
+	@Override
+	float intersectLocalRay(float[] o, float[] d) {
+		float[] tri = new float[9];
+		float t = RayIntersection.MISS;
+
+		if (!parseOk || super.intersectLocalRay(o, d) < 0)
+			return RayIntersection.MISS;
+		// polygons are split into a fan of triangles
+		for (Face fa : meshBuild.faces)
+			for (int i = 2; i < fa.vertices.size(); ++i) {
+				copyVertex(fa.vertices.get(0).v, tri, 0);
+				copyVertex(fa.vertices.get(i - 1).v, tri, 3);
+				copyVertex(fa.vertices.get(i).v, tri, 6);
+				t = RayIntersection.nearer(t, RayIntersection.triangle(o, d, tri, 0, 3, 6));
+			}
+		return t;
+	}
+
+	private static void copyVertex(VertexGeometric v, float[] pTarget, int pOffset) {
+		pTarget[pOffset] = v.x;
+		pTarget[pOffset + 1] = v.y;
+		pTarget[pOffset + 2] = v.z;
+	}
+
+	@Override
+	GeometryCache.Key geometryKey() {
+		// depends on the mesh file and the texture, don't share
+		return null;
+	}
+
+	@Override
+	void generateDisplayList_GLU(GL2 gl, GLU glu) {
+		generateDisplayList_GL(gl);
 	}
 
 	@Override
@@ -135,8 +370,6 @@ public class GLMesh extends TransformableSurfaceObject {
 		String currMatName = null, newMatName;
 		if (!parseOk)
 			return;
-		gl.glNewList(bufferName, GL2.GL_COMPILE);
-
 		boolean userTextureAvailable = (gibTextur() != null) && gibTextur().isReady();
 
 		for (Face fa : meshBuild.faces) {
@@ -151,7 +384,7 @@ public class GLMesh extends TransformableSurfaceObject {
 					loadMaterial(gl, m.ka.getFloatv(), m.kd.getFloatv(), m.ks.getFloatv(), aEmission,
 							(float) m.nsExponent);
 					if (fa.material.mapKdFilename != null) {
-						newTex = new GLTextur(new File(meshFile.getParent(), fa.material.mapKdFilename));
+						newTex = materialTexture(fa.material);
 						if (!newTex.equals(currTex)) {
 							if (!isEnded) {
 								isEnded = true;
@@ -188,6 +421,5 @@ public class GLMesh extends TransformableSurfaceObject {
 		}
 		gl.glEnd();
 		gl.glDisable(GL2.GL_TEXTURE_2D);
-		gl.glEndList();
 	}
 }
@@ -18,8 +18,6 @@ public abstract class GLObjekt extends DisplayItem implements IGLColorable {
 	private float[] aSpecular = { 0, 0, 0, 1 };
 	float[] aEmission = { 0, 0, 0, 0 };
 	private float aGlanz = 70; // between 0 and 128
-	private static int maxSelectionID = 0;
-	int selectionID = 0;
 
 	/**
 	 * Der Darstellungsmodus beschreibt, wie ein Objekt gezeichnet wird. Dabei
@@ -86,7 +84,6 @@ public abstract class GLObjekt extends DisplayItem implements IGLColorable {
 	abstract void renderDelegate(GL2 gl, GLU glu);
 
 	GLObjekt() {
-		selectionID = ++maxSelectionID;
 		conf = new GLConfig();
 		associatedCam = GLKamera.aktiveKamera();
 		associatedRenderer = associatedCam.associatedRenderer;
@@ -155,6 +152,28 @@ public abstract class GLObjekt extends DisplayItem implements IGLColorable {
 		scheduleRender();
 	}
 
+	/* Hash of the material values, used by the renderer to draw objects
+	 * with equal materials consecutively. Collisions only affect the
+	 * drawing order.
+	 */
+	int materialKey() {
+		int h = Float.floatToIntBits(aGlanz);
+		for (int i = 0; i < 4; ++i) {
+			h = 31 * h + Float.floatToIntBits(aDiffuse[i]);
+			h = 31 * h + Float.floatToIntBits(aAmbient[i]);
+			h = 31 * h + Float.floatToIntBits(aSpecular[i]);
+			h = 31 * h + Float.floatToIntBits(aEmission[i]);
+		}
+		return h ^ (h >>> 11) ^ (h >>> 22);
+	}
+
+	/* Id of the geometry this object draws, used to batch objects of the
+	 * same shape. 0 if unknown.
+	 */
+	int geometryId() {
+		return 0;
+	}
+
 	@Override
 	boolean isTransparent() {
 		return aDiffuse[3] != 1 || aAmbient[3] != 1;
@@ -189,11 +208,7 @@ public abstract class GLObjekt extends DisplayItem implements IGLColorable {
 			if (quadric == null)
 				quadric = glu.gluNewQuadric();
 
-		if (associatedCam.istDrahtgittermodell())
-			gl.glPolygonMode(GL2.GL_FRONT_AND_BACK, GL2.GL_LINE);
-		else
-			gl.glPolygonMode(GL2.GL_FRONT_AND_BACK, conf.displayMode.getMode());
-
+		applyState(associatedRenderer.getStateCache());
 		loadMaterial(gl);
 		gl.glPushMatrix();
 		renderDelegate(gl, glu);
@@ -204,12 +219,20 @@ public abstract class GLObjekt extends DisplayItem implements IGLColorable {
 		return conf;
 	}
 
+	/* Set the GL state this object expects. Every object states what it
+	 * needs instead of restoring what it changed, the renderer's state
+	 * cache drops the calls that would not change anything.
+	 */
+	void applyState(GLStateCache state) {
+		if (associatedCam.istDrahtgittermodell())
+			state.polygonMode(GL2.GL_LINE);
+		else
+			state.polygonMode(conf.displayMode.getMode());
+		state.enable(GL2.GL_CULL_FACE);
+	}
+
 	void loadMaterial(GL2 gl) {
-		gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_AMBIENT, aAmbient, 0);
-		gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_DIFFUSE, aDiffuse, 0);
-		gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_SPECULAR, aSpecular, 0);
-		gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_EMISSION, aEmission, 0);
-		gl.glMaterialf(GL2.GL_FRONT, GL2.GL_SHININESS, aGlanz);
+		associatedRenderer.getStateCache().material(aAmbient, aDiffuse, aSpecular, aEmission, aGlanz);
 	}
 
 	void loadMaterial(GL2 gl, float[] pAmb, float[] pDiff, float[] pSpec, float[] pEmiss, float pGlanz) {
@@ -1,17 +1,13 @@
 package bGLOOP;
 
-import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 
-import com.jogamp.common.nio.Buffers;
-import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL2;
 import com.jogamp.opengl.glu.GLU;
 import com.jogamp.opengl.glu.GLUquadric;
 
 import static java.lang.Math.PI;
-import static java.lang.Math.sin;
-import static java.lang.Math.cos;
+import static java.lang.Math.max;
 
 /** <p>Ein Prismoid ist eine Art polygonaler Kegelstumpf. Es besteht aus zwei
  * <em>regelmäßigen</em> n-Ecks mit unterschiedlichem Radius, deren Ecken respektive
@@ -24,13 +20,11 @@ import static java.lang.Math.cos;
  * @author R. Spillner
  */
 public class GLPrismoid extends TransformableSurfaceObject {
-	int aEcken, numberOfRadsNotEqualToZero = 0;
+	int aEcken;
 	double aRad1;
 	double aRad2;
 	double aHoehe;
 	boolean aMantelglaettung;
-	private FloatBuffer fb;
-	private int[] firstOffsets, countOffsets;
 	int aKonzentrischeKreise;
 	GLUquadric qbot, qtop;
 
@@ -77,67 +71,50 @@ public class GLPrismoid extends TransformableSurfaceObject {
 		aVisible = true;
 	}
 
-	@Override
-	void drawVBO(GL2 gl) {
-		gl.glBindBuffer( GL.GL_ARRAY_BUFFER, bufferName);
-        gl.glEnableClientState( GL2.GL_VERTEX_ARRAY );
-        gl.glEnableClientState( GL2.GL_NORMAL_ARRAY );
-        gl.glEnableClientState( GL2.GL_TEXTURE_COORD_ARRAY);
-        gl.glNormalPointer(GL.GL_FLOAT, 8 * Buffers.SIZEOF_FLOAT, 0 );
-        gl.glTexCoordPointer( 2, GL.GL_FLOAT, 8 * Buffers.SIZEOF_FLOAT, 3 * Buffers.SIZEOF_FLOAT );
-        gl.glVertexPointer(3, GL.GL_FLOAT, 8 * Buffers.SIZEOF_FLOAT, 5 * Buffers.SIZEOF_FLOAT);
-
-        // drawing from buffer
-        gl.glMultiDrawArrays(GL2.GL_TRIANGLE_STRIP, firstOffsets, 0, countOffsets, 0, aKonzentrischeKreise);
-        gl.glMultiDrawArrays(GL2.GL_TRIANGLE_FAN, firstOffsets, aKonzentrischeKreise, countOffsets, aKonzentrischeKreise, numberOfRadsNotEqualToZero);
-        // ----------------
-
-        gl.glDisableClientState( GL2.GL_VERTEX_ARRAY );
-        gl.glDisableClientState( GL2.GL_NORMAL_ARRAY );
-        gl.glDisableClientState( GL2.GL_TEXTURE_COORD_ARRAY);
-
-        // unbind buffer
-		gl.glBindBuffer( GL.GL_ARRAY_BUFFER, 0);
-	}
 
+	/* Number of corners of the n-gons that are drawn. */
+	int corners() {
+		return aEcken;
+	}
 
 	@Override
 	void generateDisplayList_GLU(GL2 gl, GLU glu) {
+		int ecken = corners();
 		// gl.glColor3f(1, 1, 1);
-		gl.glNewList(bufferName, GL2.GL_COMPILE);
 		gl.glEnable(GL2.GL_CULL_FACE);
 		glu.gluQuadricNormals(quadric, GLU.GLU_SMOOTH);
 		glu.gluQuadricTexture(quadric, true);
 		gl.glTranslated(0, 0, aHoehe/2);
-		glu.gluDisk(quadric, 0, aRad1, aEcken, 1);
+		glu.gluDisk(quadric, 0, aRad1, ecken, 1);
 		gl.glPushMatrix();
 		gl.glRotated(180, 0, 1, 0);
 		gl.glTranslated(0, 0, aHoehe);
-		glu.gluDisk(quadric, 0, aRad2, aEcken, 1);
+		glu.gluDisk(quadric, 0, aRad2, ecken, 1);
 		gl.glPopMatrix();
 		gl.glTranslated(0, 0, -aHoehe);
-		glu.gluCylinder(quadric, aRad2, aRad1, aHoehe, aEcken, aKonzentrischeKreise);
+		glu.gluCylinder(quadric, aRad2, aRad1, aHoehe, ecken, aKonzentrischeKreise);
 		// glu.gluDeleteQuadric(quadric);
-		gl.glEndList();
 	}
 
 	@Override
 	void generateDisplayList_GL(GL2 gl) {
-		double mittelpunktswinkel = 2 * PI / aEcken;
+		int ecken = corners();
+		double mittelpunktswinkel = 2 * PI / ecken;
+		// the corners lie halfway between the steps of a 2 * ecken table
+		TrigTable corners = TrigTable.of(2 * max(ecken, 1));
 
 		double lNorm = 0;
 		double lMAbschnitt = aHoehe / aKonzentrischeKreise;
 
-		gl.glNewList(bufferName, GL2.GL_COMPILE);
 		for (int j = 0; j < aKonzentrischeKreise; j++) {
 			gl.glBegin(GL2.GL_QUAD_STRIP);
 
-			double x = sin(mittelpunktswinkel / 2);
-			double y = -cos(mittelpunktswinkel / 2);
+			double x = corners.sin(1);
+			double y = -corners.cos(1);
 
-			for (int i = 0; i <= aEcken; i++) {
-				double x2 = sin(mittelpunktswinkel / 2 + ((i + 1) * mittelpunktswinkel));
-				double y2 = -cos(mittelpunktswinkel / 2 + ((i + 1) * mittelpunktswinkel));
+			for (int i = 0; i <= ecken; i++) {
+				double x2 = corners.sin(2 * i + 3);
+				double y2 = -corners.cos(2 * i + 3);
 
 				double rad1 = aRad1 + j * (aRad2 - aRad1) / aKonzentrischeKreise;
 				double rad2 = aRad1 + (j + 1) * (aRad2 - aRad1) / aKonzentrischeKreise;
@@ -174,9 +151,9 @@ public class GLPrismoid extends TransformableSurfaceObject {
 			gl.glNormal3d(0, 0, 1);
 			gl.glTexCoord2d(0.5, 0.5);
 			gl.glVertex3d(0, 0, aHoehe / 2);
-			for (int i = 0; i <= aEcken; i++) {
-				double x = sin(mittelpunktswinkel / 2 + i * mittelpunktswinkel);
-				double y = -cos(mittelpunktswinkel / 2 + i * mittelpunktswinkel);
+			for (int i = 0; i <= ecken; i++) {
+				double x = corners.sin(2 * i + 1);
+				double y = -corners.cos(2 * i + 1);
 				gl.glTexCoord2d(0.5 + x / 2, 0.5 - y / 2);
 				gl.glVertex3d(x * aRad1, y * aRad1, aHoehe / 2);
 			}
@@ -187,15 +164,14 @@ public class GLPrismoid extends TransformableSurfaceObject {
 			gl.glNormal3d(0, 0, -1);
 			gl.glTexCoord2d(0.5, 0.5);
 			gl.glVertex3d(0.0, 0.0, -aHoehe / 2);
-			for (int i = aEcken; i >= 0; i--) {
-				double x = sin(mittelpunktswinkel / 2 + i * mittelpunktswinkel);
-				double y = -cos(mittelpunktswinkel / 2 + i * mittelpunktswinkel);
+			for (int i = ecken; i >= 0; i--) {
+				double x = corners.sin(2 * i + 1);
+				double y = -corners.cos(2 * i + 1);
 				gl.glTexCoord2d(0.5 + x / 2, 0.5 + y / 2);
 				gl.glVertex3d(x * aRad2, y * aRad2, -aHoehe / 2);
 			}
 			gl.glEnd();
 		}
-		gl.glEndList();
 	}
 
 	/**
@@ -212,63 +188,75 @@ public class GLPrismoid extends TransformableSurfaceObject {
 	}
 
 	@Override
-	void generateVBO(GL2 gl) {
-		int[] t = new int[1];
-		if(fb != null && bufferName != -1) {
-			t[0] = bufferName;
-			gl.glDeleteBuffers(1, t, 0);
-			fb.clear();
-		}
-		gl.glGenBuffers(1, t, 0);
-		bufferName = t[0];
+	Tessellation tessellate() {
+		return tessellateFor(geometryKey());
+	}
 
+	/* Reads the shape only from pKey, see geometryKey for the order. */
+	@Override
+	Tessellation tessellateFor(GeometryCache.Key pKey) {
+		double radius1 = pKey.param(0), radius2 = pKey.param(1);
+		int ecken = (int) pKey.param(3), kreise = (int) pKey.param(4);
+		boolean glatt = pKey.param(5) != 0;
 		// build offset arrays to address different stages during
 		// drawing process of the prismoid
-		numberOfRadsNotEqualToZero = (aRad1!=0?1:0) + (aRad2!=0?1:0);
-		firstOffsets = new int[aKonzentrischeKreise+numberOfRadsNotEqualToZero];
-		countOffsets = new int[aKonzentrischeKreise+numberOfRadsNotEqualToZero];
+		int numberOfRadsNotEqualToZero = (radius1!=0?1:0) + (radius2!=0?1:0);
+		int[] firstOffsets = new int[kreise+numberOfRadsNotEqualToZero];
+		int[] countOffsets = new int[kreise+numberOfRadsNotEqualToZero];
 
 		
-		for (int i = 0; i < aKonzentrischeKreise; ++i) {
-			firstOffsets[i] = (aMantelglaettung ? 2 : 4) * (aEcken + 1) * i;
-			countOffsets[i] = (aMantelglaettung ? 2 : 4) * (aEcken + 1);
+		for (int i = 0; i < kreise; ++i) {
+			firstOffsets[i] = (glatt ? 2 : 4) * (ecken + 1) * i;
+			countOffsets[i] = (glatt ? 2 : 4) * (ecken + 1);
 		}
 		int t2 = 0;
-		if(aRad1!=0) {
-			firstOffsets[aKonzentrischeKreise] = firstOffsets[aKonzentrischeKreise-1] + countOffsets[aKonzentrischeKreise-1];
-			countOffsets[aKonzentrischeKreise] = aEcken + 2;
+		if(radius1!=0) {
+			firstOffsets[kreise] = firstOffsets[kreise-1] + countOffsets[kreise-1];
+			countOffsets[kreise] = ecken + 2;
 			t2++;
 		}
-		if (aRad2 != 0) {
-			firstOffsets[aKonzentrischeKreise + t2] = firstOffsets[aKonzentrischeKreise + t2 - 1]
-					+ countOffsets[aKonzentrischeKreise + t2 - 1];
-			countOffsets[aKonzentrischeKreise + t2] = aEcken + 2;
+		if (radius2 != 0) {
+			firstOffsets[kreise + t2] = firstOffsets[kreise + t2 - 1]
+					+ countOffsets[kreise + t2 - 1];
+			countOffsets[kreise + t2] = ecken + 2;
 		}
 		
-		int vertexBufferSize =  16 * ((aMantelglaettung ? 1 : 2) * (aEcken + 1) * aKonzentrischeKreise + aEcken + 2) * Buffers.SIZEOF_FLOAT;
-		gl.glBindBuffer(GL.GL_ARRAY_BUFFER, bufferName);
-		gl.glBufferData(GL.GL_ARRAY_BUFFER, vertexBufferSize, null,
-				GL2.GL_STATIC_DRAW);
-		fb = gl.glMapBuffer(GL.GL_ARRAY_BUFFER, GL.GL_WRITE_ONLY).order(ByteOrder.nativeOrder())
-				.asFloatBuffer();
-
-		// ready for drawing (to buffer)
-		double mittelpunktswinkel = 2 * PI / aEcken;
+		Tessellation t = new Tessellation(vboVertexCount(pKey));
+		t.setRanges(firstOffsets, countOffsets, kreise);
+		fillVBO(t.vertices, pKey);
+		return t;
+	}
+
+	/* Number of vertices written by fillVBO. */
+	int vboVertexCount(GeometryCache.Key pKey) {
+		int ecken = (int) pKey.param(3), kreise = (int) pKey.param(4);
+		boolean glatt = pKey.param(5) != 0;
+		return 2 * ((glatt ? 1 : 2) * (ecken + 1) * kreise + ecken + 2);
+	}
+
+	/* Writes the vertices for tessellate, see Geometry for the layout. */
+	void fillVBO(FloatBuffer fb, GeometryCache.Key pKey) {
+		double radius1 = pKey.param(0), radius2 = pKey.param(1), hoehe = pKey.param(2);
+		int ecken = (int) pKey.param(3), kreise = (int) pKey.param(4);
+		boolean glatt = pKey.param(5) != 0;
+		double mittelpunktswinkel = 2 * PI / ecken;
+		// the corners lie halfway between the steps of a 2 * ecken table
+		TrigTable corners = TrigTable.of(2 * max(ecken, 1));
 		double lNorm = 0;
-		double lMAbschnitt = aHoehe / aKonzentrischeKreise;
+		double lMAbschnitt = hoehe / kreise;
 
-		for (int j = 0; j < aKonzentrischeKreise; j++) {
-			double x = sin(mittelpunktswinkel / 2);
-			double y = -cos(mittelpunktswinkel / 2);
+		for (int j = 0; j < kreise; j++) {
+			double x = corners.sin(1);
+			double y = -corners.cos(1);
 
-			for (int i = 0; i <= aEcken; i++) {
-				double x2 = sin(mittelpunktswinkel / 2 + ((i + 1) * mittelpunktswinkel));
-				double y2 = -cos(mittelpunktswinkel / 2 + ((i + 1) * mittelpunktswinkel));
+			for (int i = 0; i <= ecken; i++) {
+				double x2 = corners.sin(2 * i + 3);
+				double y2 = -corners.cos(2 * i + 3);
 
-				double rad1 = aRad1 + j * (aRad2 - aRad1) / aKonzentrischeKreise;
-				double rad2 = aRad1 + (j + 1) * (aRad2 - aRad1) / aKonzentrischeKreise;
+				double rad1 = radius1 + j * (radius2 - radius1) / kreise;
+				double rad2 = radius1 + (j + 1) * (radius2 - radius1) / kreise;
 
-				if (!aMantelglaettung) {
+				if (!glatt) {
 					lNorm = (x + x2) * (x+x2) + (y + y2) * (y + y2);
 					fb.put((float)((x + x2) / lNorm));
 					fb.put((float)((y + y2) / lNorm));
@@ -281,12 +269,12 @@ public class GLPrismoid extends TransformableSurfaceObject {
 
 
 				fb.put((float)(i * mittelpunktswinkel / (2*PI)));
-				fb.put((float)j / aKonzentrischeKreise);
+				fb.put((float)j / kreise);
 				fb.put((float)(x * rad1));
 				fb.put((float)(y * rad1));
-				fb.put((float)(aHoehe / 2 - j * lMAbschnitt));  // 8
+				fb.put((float)(hoehe / 2 - j * lMAbschnitt));  // 8
 
-				if (!aMantelglaettung) {
+				if (!glatt) {
 					fb.put((float)((x + x2) / lNorm));
 					fb.put((float)((y + y2) / lNorm));
 					fb.put(0);
@@ -296,35 +284,35 @@ public class GLPrismoid extends TransformableSurfaceObject {
 					fb.put(0);
 				}
 				fb.put((float)(i * mittelpunktswinkel / (2*PI)));
-				fb.put((j + 1f) / aKonzentrischeKreise);
+				fb.put((j + 1f) / kreise);
 				fb.put((float)(x * rad2));
 				fb.put((float)(y * rad2));
-				fb.put((float)(aHoehe / 2 - (j + 1) * lMAbschnitt));  // 16
+				fb.put((float)(hoehe / 2 - (j + 1) * lMAbschnitt));  // 16
 
-				if (!aMantelglaettung) {
+				if (!glatt) {
 					fb.put((float)((x + x2) / lNorm));
 					fb.put((float)((y + y2) / lNorm));
 					fb.put(0);
 					fb.put((float)((i * mittelpunktswinkel + mittelpunktswinkel) / (2*PI)));
-					fb.put((float)j / aKonzentrischeKreise);
+					fb.put((float)j / kreise);
 					fb.put((float)(x2 * rad1));
 					fb.put((float)(y2 * rad1));
-					fb.put((float)(aHoehe / 2 - j * lMAbschnitt));  // 24
+					fb.put((float)(hoehe / 2 - j * lMAbschnitt));  // 24
 					fb.put((float)((x + x2) / lNorm));
 					fb.put((float)((y + y2) / lNorm));
 					fb.put(0);
 					fb.put((float)((i * mittelpunktswinkel + mittelpunktswinkel) / (2*PI)));
-					fb.put((j + 1f) / aKonzentrischeKreise);
+					fb.put((j + 1f) / kreise);
 					fb.put((float)(x2 * rad2));
 					fb.put((float)(y2 * rad2));
-					fb.put((float)(aHoehe / 2 - (j + 1) * lMAbschnitt));  // 32
+					fb.put((float)(hoehe / 2 - (j + 1) * lMAbschnitt));  // 32
 				}
 				x = x2;
 				y = y2;
 			}
 		}
 
-		if (aRad1 != 0) {
+		if (radius1 != 0) {
 			fb.put(0);
 			fb.put(0);
 			fb.put(1);
@@ -333,22 +321,22 @@ public class GLPrismoid extends TransformableSurfaceObject {
 			
 			fb.put(0);
 			fb.put(0);
-			fb.put((float)(aHoehe / 2)); // 8
+			fb.put((float)(hoehe / 2)); // 8
 
-			for (int i = 0; i <= aEcken; i++) {
-				double x = sin(mittelpunktswinkel / 2 + i * mittelpunktswinkel);
-				double y = -cos(mittelpunktswinkel / 2 + i * mittelpunktswinkel);
+			for (int i = 0; i <= ecken; i++) {
+				double x = corners.sin(2 * i + 1);
+				double y = -corners.cos(2 * i + 1);
 				fb.put(0);
 				fb.put(0);
 				fb.put(1);
 				fb.put((float)(0.5 + x / 2));
 				fb.put((float)(0.5 - y / 2));
-				fb.put((float)(x * aRad1));
-				fb.put((float)(y * aRad1));
-				fb.put((float)(aHoehe / 2)); // 8
+				fb.put((float)(x * radius1));
+				fb.put((float)(y * radius1));
+				fb.put((float)(hoehe / 2)); // 8
 			}
 		}
-		if (aRad2 != 0) {
+		if (radius2 != 0) {
 			fb.put(0);
 			fb.put(0);
 			fb.put(-1);
@@ -356,21 +344,75 @@ public class GLPrismoid extends TransformableSurfaceObject {
 			fb.put(0.5f);
 			fb.put(0);
 			fb.put(0);
-			fb.put((float)(-aHoehe / 2)); // 8
-			for (int i = aEcken; i >= 0; i--) {
-				double x = sin(mittelpunktswinkel / 2 + i * mittelpunktswinkel);
-				double y = -cos(mittelpunktswinkel / 2 + i * mittelpunktswinkel);
+			fb.put((float)(-hoehe / 2)); // 8
+			for (int i = ecken; i >= 0; i--) {
+				double x = corners.sin(2 * i + 1);
+				double y = -corners.cos(2 * i + 1);
 				fb.put(0);
 				fb.put(0);
 				fb.put(-1);
 				fb.put((float)(0.5 + x / 2));
 				fb.put((float)(0.5 + y / 2));
-				fb.put((float)(x * aRad2));
-				fb.put((float)(y * aRad2));
-				fb.put((float)(-aHoehe / 2));  // 8
+				fb.put((float)(x * radius2));
+				fb.put((float)(y * radius2));
+				fb.put((float)(-hoehe / 2));  // 8
+			}
+		}
+	}
+
+	@Override
+	boolean localBounds(float[] pCenter, float[] pExtent) {
+		pCenter[0] = pCenter[1] = pCenter[2] = 0;
+		pExtent[0] = pExtent[1] = (float) max(aRad1, aRad2);
+		pExtent[2] = (float) aHoehe / 2;
+		return true;
+	}
+
+	/* The prismoid is convex, so the ray is clipped against the planes of
+	 * its faces: the two caps and one plane per side, whose distance from
+	 * the axis changes linearly from aRad2 at the bottom to aRad1 at the top.
+	 */
+	@Override
+	float intersectLocalRay(float[] o, float[] d) {
+		int n = max(corners(), 3);
+		TrigTable sides = TrigTable.of(2 * n);
+		double ca = sides.cos(1), tNear = 0, tFar = Double.POSITIVE_INFINITY;
+		double k = aHoehe == 0 ? 0 : -ca * (aRad1 - aRad2) / aHoehe, m = ca * (aRad1 + aRad2) / 2;
+		double nx, ny, nz, dist, denom, num, t;
+
+		for (int i = -2; i < n; ++i) {
+			// plane nx*x + ny*y + nz*z <= dist
+			if (i < 0) {
+				nx = ny = 0;
+				nz = i == -1 ? 1 : -1;
+				dist = aHoehe / 2;
+			} else {
+				nx = sides.sin(2 * i + 2);
+				ny = -sides.cos(2 * i + 2);
+				nz = k;
+				dist = m;
 			}
+			denom = nx * d[0] + ny * d[1] + nz * d[2];
+			num = dist - (nx * o[0] + ny * o[1] + nz * o[2]);
+			if (denom == 0) {
+				if (num < 0)
+					return RayIntersection.MISS;
+				continue;
+			}
+			t = num / denom;
+			if (denom < 0)
+				tNear = Math.max(tNear, t);
+			else
+				tFar = Math.min(tFar, t);
+			if (tNear > tFar)
+				return RayIntersection.MISS;
 		}
-		gl.glUnmapBuffer(GL.GL_ARRAY_BUFFER);
-		needsRedraw = false;
+		return (float) tNear;
+	}
+
+	@Override
+	GeometryCache.Key geometryKey() {
+		return new GeometryCache.Key(GLPrismoid.class, conf.objectRenderMode, aRad1, aRad2, aHoehe, corners(),
+				aKonzentrischeKreise, aMantelglaettung ? 1 : 0);
 	}
 }
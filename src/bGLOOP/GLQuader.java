@@ -1,10 +1,7 @@
 package bGLOOP;
 
-import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 
-import com.jogamp.common.nio.Buffers;
-import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL2;
 import com.jogamp.opengl.glu.GLU;
 import com.jogamp.opengl.math.Quaternion;
@@ -16,8 +13,7 @@ import com.jogamp.opengl.math.Quaternion;
  * @author R. Spillner
  */
 public class GLQuader extends TransformableSurfaceObject {
-	private FloatBuffer fb;
-	private int[] firstOffsets = { 0, 4, 8, 12, 16, 20}, countOffsets = { 4, 4, 4, 4, 4, 4 };
+	private final static int[] firstOffsets = { 0, 4, 8, 12, 16, 20}, countOffsets = { 4, 4, 4, 4, 4, 4 };
 
 	/**
 	 * Erzeugt einen Quader mit Mittelpunkt <code>M(pMX, pMY, pMZ)</code> und
@@ -63,26 +59,6 @@ public class GLQuader extends TransformableSurfaceObject {
 		aVisible = true;
 	}
 
-	@Override
-	void drawVBO(GL2 gl) {
-		gl.glBindBuffer( GL.GL_ARRAY_BUFFER, bufferName);
-        gl.glEnableClientState( GL2.GL_VERTEX_ARRAY );
-        gl.glEnableClientState( GL2.GL_NORMAL_ARRAY );
-        gl.glEnableClientState( GL2.GL_TEXTURE_COORD_ARRAY);
-        gl.glNormalPointer(GL.GL_FLOAT, 8 * Buffers.SIZEOF_FLOAT, 0 );
-        gl.glTexCoordPointer( 2, GL.GL_FLOAT, 8 * Buffers.SIZEOF_FLOAT, 3 * Buffers.SIZEOF_FLOAT );
-        gl.glVertexPointer(3, GL.GL_FLOAT, 8 * Buffers.SIZEOF_FLOAT, 5 * Buffers.SIZEOF_FLOAT);
-
-        gl.glMultiDrawArrays(GL2.GL_TRIANGLE_STRIP, firstOffsets, 0, countOffsets, 0, 6);
-
-        gl.glDisableClientState( GL2.GL_VERTEX_ARRAY );
-        gl.glDisableClientState( GL2.GL_NORMAL_ARRAY );
-        gl.glDisableClientState( GL2.GL_TEXTURE_COORD_ARRAY);
-
-        // unbind buffer
-		gl.glBindBuffer( GL.GL_ARRAY_BUFFER, 0);
-	}
-
 	@Override
 	void generateDisplayList_GLU(GL2 gl, GLU glu) {
 		generateDisplayList_GL(gl);
@@ -95,7 +71,6 @@ public class GLQuader extends TransformableSurfaceObject {
 		Quaternion rot1 = new Quaternion().rotateByAngleNormalAxis((float)Math.PI/2, n[0], n[1], n[2]),
 				rot2 = new Quaternion().rotateByAngleY((float)Math.PI/2);
 
-		gl.glNewList(bufferName, GL2.GL_COMPILE);
 		gl.glBegin(GL2.GL_QUADS);
 		for(int k=0; k<2; ++k) {
 			for(int face = 0; face < 4-(2*k); ++face) {
@@ -114,22 +89,13 @@ public class GLQuader extends TransformableSurfaceObject {
 			rot2.setIdentity().rotateByAngleZ((float)Math.PI);
 		}
 		gl.glEnd();
-		gl.glEndList();
 	}
 
 	@Override
-	void generateVBO(GL2 gl) {
-		int[] t = new int[1];
-		if (fb != null && bufferName != -1) {
-			t[0] = bufferName;
-			gl.glDeleteBuffers(1, t, 0);
-			fb.clear();
-		}
-		gl.glGenBuffers(1, t, 0);
-		bufferName = t[0];
-		gl.glBindBuffer(GL.GL_ARRAY_BUFFER, bufferName);
-		gl.glBufferData(GL.GL_ARRAY_BUFFER, 192 * Buffers.SIZEOF_FLOAT, null, GL2.GL_STATIC_DRAW);
-		fb = gl.glMapBuffer(GL.GL_ARRAY_BUFFER, GL.GL_WRITE_ONLY).order(ByteOrder.nativeOrder()).asFloatBuffer();
+	Tessellation tessellate() {
+		Tessellation t = new Tessellation(24);
+		t.setRanges(firstOffsets, countOffsets, 6);
+		FloatBuffer fb = t.vertices;
 
 		float[] v = new float[] { 0.5f, 0.5f, -0.5f }, n = new float[] { 1, 0, 0 };
 
@@ -157,8 +123,20 @@ public class GLQuader extends TransformableSurfaceObject {
 			rot1.setIdentity().rotateByAngleY((float) Math.PI / 2);
 			rot2.setIdentity().rotateByAngleZ((float) Math.PI);
 		}
+		return t;
+	}
+
+	@Override
+	boolean localBounds(float[] pCenter, float[] pExtent) {
+		// unit cube, scaled by the transformation
+		pCenter[0] = pCenter[1] = pCenter[2] = 0;
+		pExtent[0] = pExtent[1] = pExtent[2] = 0.5f;
+		return true;
+	}
 
-		gl.glUnmapBuffer(GL.GL_ARRAY_BUFFER);
-		needsRedraw = false;
+	@Override
+	GeometryCache.Key geometryKey() {
+		// always the unit cube, the size is part of the transformation
+		return new GeometryCache.Key(GLQuader.class, conf.objectRenderMode);
 	}
 }
@@ -2,79 +2,130 @@ package bGLOOP;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FilenameFilter;
-import java.io.IOException;
-import java.nio.IntBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
-import java.util.ListIterator;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Pattern;
 
-import javax.imageio.ImageIO;
+import javax.management.ObjectName;
 
-import com.jogamp.common.nio.Buffers;
 import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL2;
 import com.jogamp.opengl.GLAutoDrawable;
 import com.jogamp.opengl.GLCapabilities;
+import com.jogamp.opengl.GLContext;
 import com.jogamp.opengl.GLEventListener;
 import com.jogamp.opengl.GLProfile;
 import com.jogamp.opengl.glu.GLU;
-import com.jogamp.opengl.util.Animator;
-import com.jogamp.opengl.util.awt.AWTGLReadBufferUtil;
+import com.jogamp.opengl.math.FloatUtil;
+import com.jogamp.opengl.math.Ray;
+import com.jogamp.opengl.math.VectorUtil;
+import com.jogamp.opengl.math.geom.Frustum;
+import com.jogamp.opengl.util.AnimatorBase;
 
 import bGLOOP.GLObjekt.Rendermodus;
 import bGLOOP.GLTextur.GLTextureImpl;
 import bGLOOP.windowimpl.Window;
 
 class GLRenderer implements GLEventListener {
-	private class TransparencyComparator implements Comparator<DisplayItem> {
-		@Override
-		public int compare(DisplayItem o1, DisplayItem o2) {
-			if(o1.isTransparent() == o2.isTransparent())
-				return 0;
-			else if(o1.isTransparent() && !o2.isTransparent())
-				return 1;
-			else
-				return -1;
-		}
-	}
+	// vertical field of view in degrees
+	private final static float FOVY = 60;
+	private final static float Z_NEAR = 1, Z_FAR = 100000;
+	// milliseconds stopRecording waits for the GL thread to take over
+	private final static long RECORDING_STOP_TIMEOUT = 5000;
 
     private Logger log = Logger.getLogger("bGLOOP");
 
-	private int window_rendering_needed = 2;
+	private volatile int window_rendering_needed = 2;
 	private long animatorLastFPSTime = 0;
-	private Animator animator;
+	private AnimatorBase animator;
+	// in on demand mode the animator is paused while there is nothing to
+	// do; the lock orders parking against wake up calls
+	private volatile boolean animatorParked = false;
+	private final Object parkLock = new Object();
 	private GLKamera aCam;
 	private WindowConfig wconf;
 	private ConcurrentHashMap<GLTextureImpl, CopyOnWriteArrayList<DisplayItem>>
 		renderItemMap;
-	private ConcurrentHashMap<Integer, GLObjekt> objectNameMap;
-
-	private TransparencyComparator tc = new TransparencyComparator();
+	// incremented on every change of renderItemMap, so that the render
+	// thread knows when to rebuild its flat draw list; user threads add
+	// and remove objects concurrently, so no increment may get lost
+	private final AtomicInteger renderMapModCount = new AtomicInteger();
+
+	// renderer-owned scratch structures, reused in every frame;
+	// they are only touched by the GL thread
+	private GLU glu;
+	private DisplayItem[] drawItems = new DisplayItem[64];
+	private GLTextureImpl[] drawTextures = new GLTextureImpl[64];
+	private int drawListSize = 0, drawListModCount = -1;
+	private final DrawList drawList = new DrawList(64);
+	// transparent items in back to front order of the last frame; kept
+	// between frames, so that sorting usually finds an almost sorted list
+	private int[] transparentOrder = new int[64];
+	private float[] transparentDepth = new float[64];
+	private boolean[] inTransparentPass = new boolean[64];
+	private int transparentCount = 0;
+	private final DrawList transparentList = new DrawList(64);
+	// snapshot of the camera taken at the start of the frame, and the
+	// normalized viewing direction
+	private final float[] viewEye = new float[3], viewLookAt = new float[3], viewUp = new float[3],
+			viewDir = new float[3];
+	// view frustum of the current frame, built from the camera and the
+	// projection of the last reshape
+	private final Frustum frustum = new Frustum();
+	private final float[] projection = new float[16], modelView = new float[16], pmv = new float[16],
+			matTmp = new float[16];
+	private int frameDrawnObjects, frameCulledObjects, frameStamp = 0;
+	// texture of the last drawn item in the current frame
+	private GLTextureImpl boundTexture;
+	private boolean unsortedWarning = false;
+	private volatile int drawnObjects = 0, culledObjects = 0;
 
 	private Window win;
-	private boolean currentLighting;
-
-	private boolean makeScreenshot = false;
-	boolean selectionRun = false;
-	private String screenshotFilename = null;
+	private final GLStateCache state = new GLStateCache();
+	private final GeometryCache geometryCache = new GeometryCache();
+	private final FrameStatistics statistics = new FrameStatistics(state, geometryCache);
+	private final static AtomicInteger nextRendererId = new AtomicInteger();
+	private final LooseOctree spatialIndex = new LooseOctree();
+	private final ConcurrentLinkedQueue<PickRequest> pickRequests = new ConcurrentLinkedQueue<PickRequest>();
+	private final CopyOnWriteArrayList<FrameAction> frameActions = new CopyOnWriteArrayList<FrameAction>();
+	// objects whose transformation has changed since the last frame
+	private final ConcurrentLinkedQueue<GLBewegbaresObjekt> transformUpdates =
+			new ConcurrentLinkedQueue<GLBewegbaresObjekt>();
+
+	// JMX name of the statistics, null if they are not registered
+	private ObjectName statisticsName;
+
+	private final ScreenshotPipeline screenshots;
+	private volatile FrameRecorder recorder;
+	// the thread that calls display, see stopRecording
+	private volatile Thread glThread;
 
 	// TODO this does not belong here!!!!!!! This is just a hack
 	// to be removed when I know better --- and when I have to subclass
 	// ConcurrentHashMap for that
 	private GLHimmel sky;
 
-	private int selX = -1, selY = -1;
+	// window size of the last reshape, needed for picking
+	private volatile int viewportWidth = 0, viewportHeight = 0;
+	// pixels covered by one unit at distance one, see getPixelsPerUnit
+	private volatile float pixelsPerUnit = 0;
 
 	GLRenderer(WindowConfig wc, int width, int height, GLKamera cam, boolean pFullscreen, boolean pNoDecoration) {
 		wconf = wc;
 		aCam = cam;
-		win = Window.createWindowFactory(wconf.isAWT());
+		screenshots = new ScreenshotPipeline(wconf);
+		geometryCache.setUploadBudget(wconf.vboUploadBudget * 1024L);
+		if (wconf.jmxStatistics)
+			statisticsName = StatisticsMBean.register(statistics, nextRendererId.getAndIncrement());
+		win = Window.createWindowFactory(wconf.isAWT(), wconf.isOffscreen());
 
 		GLProfile glp = GLProfile.getDefault();
 		GLCapabilities caps = new GLCapabilities(glp);
@@ -83,18 +134,19 @@ class GLRenderer implements GLEventListener {
 		caps.setDoubleBuffered(wconf.doubleBuffering);
 		caps.setDepthBits(24);
 
+		win.setMaxFPS(wconf.maxFPS);
 		win.createWindow(caps, width, height);
 		win.setFullscreen(pFullscreen);
 		win.setDecoration(pNoDecoration);
 
 		win.getAutoDrawable().addGLEventListener(this);
+		// the window may end the JVM before the GL context is disposed
+		win.setExitAction(this::finishBackgroundWork);
 		animator = win.getAnimator();
 		animator.start();
 		animator.setUpdateFPSFrames(wconf.doubleBuffering ? 60:2000, null);
 		win.startDisplay();
-		currentLighting = !wconf.globalLighting;
 		renderItemMap = new ConcurrentHashMap<GLTextureImpl, CopyOnWriteArrayList<DisplayItem>>(10);
-		objectNameMap = new ConcurrentHashMap<Integer, GLObjekt>(100);
 	}
 
 	// remove oldImpl from map
@@ -113,27 +165,21 @@ class GLRenderer implements GLEventListener {
 
 	void removeObjectFromRenderMap(GLTextur tex, DisplayItem di) {
 		renderItemMap.get(tex.aTexturImpl).remove(di);
+		renderMapModCount.incrementAndGet();
 
-		if(di instanceof GLObjekt)
-			objectNameMap.remove(di);
+		if (di instanceof GLBewegbaresObjekt)
+			spatialIndex.remove((GLBewegbaresObjekt) di);
 	}
 
 	void addObjectToRenderMap(GLTextur tex, DisplayItem di) {
 		if (di instanceof GLHimmel)
 			sky = (GLHimmel) di;
 		else {
-			CopyOnWriteArrayList<DisplayItem> dil;
-			if (renderItemMap.containsKey(tex.aTexturImpl))
-				(dil = renderItemMap.get(tex.aTexturImpl)).add(di);
-			else {
-				(dil = new CopyOnWriteArrayList<DisplayItem>()).add(di);
-				renderItemMap.put(tex.aTexturImpl, dil);
-			}
-			dil.sort(tc);
-		}
-		if(di instanceof GLObjekt) {
-			GLObjekt g = (GLObjekt)di;
-			objectNameMap.put(g.selectionID, g);
+			renderItemMap.computeIfAbsent(tex.aTexturImpl, t -> new CopyOnWriteArrayList<DisplayItem>()).add(di);
+			renderMapModCount.incrementAndGet();
+
+			if (di instanceof GLBewegbaresObjekt)
+				spatialIndex.add((GLBewegbaresObjekt) di);
 		}
 	}
 
@@ -146,28 +192,31 @@ class GLRenderer implements GLEventListener {
 		// Get the OpenGL graphics context
 		GL2 gl = drawable.getGL().getGL2();
 		// Get GL Utilities after the GL context created.
+		glu = GLU.createGLU(gl);
+		state.begin(gl);
 
 		gl.glShadeModel(wconf.globalShadeModel);
 		// Set background color in RGBA. Alpha: 0 (transparent) 1 (opaque)
 		gl.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
 		// Setup the depth buffer and enable the depth testing
 		gl.glClearDepth(10000.0f); // clear z-buffer to the farthest
-		gl.glEnable(GL2.GL_DEPTH_TEST); // enables depth testing
+		state.enable(GL2.GL_DEPTH_TEST); // enables depth testing
 		 gl.glDepthFunc(GL2.GL_LEQUAL); // the type of depth test to do
+		geometryCache.setPrimitiveRestart(gl.isFunctionAvailable("glPrimitiveRestartIndex"));
 		if(gl.isFunctionAvailable("glBindBuffer"))
 			gl.glBindBuffer( GL.GL_ARRAY_BUFFER, 0);
 		else
 			if(wconf.globalObjectRenderMode == Rendermodus.RENDER_VBOGL)
 				wconf.globalObjectRenderMode = Rendermodus.RENDER_GLU; 
 
-		gl.glEnable(GL2.GL_CULL_FACE);
-		gl.glCullFace(GL2.GL_BACK);
+		state.enable(GL2.GL_CULL_FACE);
+		state.cullFace(GL2.GL_BACK);
 		// Do the best perspective correction
 		gl.glHint(GL2.GL_PERSPECTIVE_CORRECTION_HINT, GL2.GL_NICEST);
 		doLighting(gl);
 
 		gl.glEnable(GL2.GL_LINE_SMOOTH);
-		gl.glEnable(GL2.GL_BLEND);
+		state.enable(GL2.GL_BLEND);
 		gl.glBlendFunc(GL2.GL_SRC_ALPHA, GL2.GL_ONE_MINUS_SRC_ALPHA);
 		gl.glHint(GL2.GL_LINE_SMOOTH_HINT, GL2.GL_DONT_CARE);
 
@@ -181,94 +230,153 @@ class GLRenderer implements GLEventListener {
 	}
 
 	private void doLighting(GL2 gl) {
-		// only call these when lighting has changed
-		if (currentLighting != wconf.globalLighting) {
-			currentLighting = wconf.globalLighting;
-			if (currentLighting) {
-				gl.glEnable(GL2.GL_LIGHTING);
-				gl.glEnable(GL2.GL_NORMALIZE);
-			} else {
-				gl.glDisable(GL2.GL_LIGHTING);
-				gl.glDisable(GL2.GL_NORMALIZE);
-			}
-		}
+		// the state cache only calls these when lighting has changed
+		state.setEnabled(GL2.GL_LIGHTING, wconf.globalLighting);
+		state.setEnabled(GL2.GL_NORMALIZE, wconf.globalLighting);
+	}
+
+	GLStateCache getStateCache() {
+		return state;
+	}
+
+	FrameStatistics getStatistics() {
+		return statistics;
+	}
+
+	GeometryCache getGeometryCache() {
+		return geometryCache;
+	}
+
+	LooseOctree getSpatialIndex() {
+		return spatialIndex;
+	}
+
+	/* The camera as seen by the current frame. Only valid on the GL thread
+	 * while rendering; the arrays must not be modified.
+	 */
+	float[] getViewEye() {
+		return viewEye;
+	}
+
+	/* Height in pixels of a length of one unit at distance one from the
+	 * eye, perpendicular to the view direction. Divided by the distance,
+	 * this converts lengths in the scene to pixels on the screen.
+	 */
+	float getPixelsPerUnit() {
+		return pixelsPerUnit;
+	}
+
+	float[] getViewLookAt() {
+		return viewLookAt;
+	}
+
+	float[] getViewUp() {
+		return viewUp;
+	}
+
+	/* Called by objects whose transformation has changed, see
+	 * GLBewegbaresObjekt.publishTransform.
+	 */
+	void publishTransform(GLBewegbaresObjekt pObj) {
+		transformUpdates.add(pObj);
 	}
 
 	@Override
 	public void dispose(final GLAutoDrawable drawable) {
+		screenshots.dispose(drawable.getGL().getGL2());
+		statistics.dispose(drawable.getGL().getGL2());
+		if (statisticsName != null) {
+			StatisticsMBean.unregister(statisticsName);
+			statisticsName = null;
+		}
+		FrameRecorder rec = recorder;
+		if (rec != null) {
+			finishRecording(rec, drawable.getGL().getGL2());
+			// the writers are daemons, the JVM may end right after this
+			try {
+				rec.awaitFinished();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		geometryCache.dispose(drawable.getGL().getGL2());
+	}
+
+	/* Exit action of the window, see Window.setExitAction. The animator
+	 * has stopped, so a recording is finished without the GL.
+	 */
+	private void finishBackgroundWork() {
+		screenshots.shutdown();
+		stopRecording();
 	}
 
 	@Override
 	public void display(final GLAutoDrawable drawable) {
-		if(selectionRun)
-			doSelectionRun(drawable);
+		long frameStart = System.nanoTime();
+		GL2 gl = drawable.getGL().getGL2();
+		glThread = Thread.currentThread();
+		screenshots.collect(gl);
+		resolvePicks();
+		runFrameActions();
+
+		FrameRecorder rec = recorder;
+		if (rec != null && rec.isStopRequested()) {
+			finishRecording(rec, gl);
+			rec = null;
+		}
+		// a recording captures every frame, so keep rendering
+		if (rec != null && window_rendering_needed == 0)
+			window_rendering_needed = 1;
 
 		if (window_rendering_needed > 0 ) {
-			log.fine("render scene , run " + window_rendering_needed--);
-			renderScene(drawable.getGL().getGL2());
+			if (log.isLoggable(Level.FINE))
+				log.fine("render scene , run " + window_rendering_needed);
+			window_rendering_needed--;
+			statistics.beginFrame(gl, frameStart);
+			renderScene(gl);
+			// only a frame rendered right now is guaranteed to be in the
+			// back buffer
+			screenshots.capture(gl, drawable.getSurfaceWidth(), drawable.getSurfaceHeight());
+			if (rec != null)
+				rec.capture(gl, drawable.getSurfaceWidth(), drawable.getSurfaceHeight());
+			statistics.endFrame(gl, drawnObjects, culledObjects, animator.getLastFPS());
 		}
 
 		updateFPSView();
 
-		if(makeScreenshot) {
-			takeScreenshot(drawable.getGL());
-			makeScreenshot = false;
-		}
+		if (wconf.renderOnDemand)
+			parkIfIdle();
 	}
 
-	private void doSelectionRun(final GLAutoDrawable drawable) {
-		GL2 gl = drawable.getGL().getGL2();
-		GLU glu = GLU.createGLU();
-		IntBuffer buffer = Buffers.newDirectIntBuffer(512);
-		int hits, n, first = -1;
-		float z, zmin = Float.POSITIVE_INFINITY;
-
-		int[] viewport = new int[4];
-
-		gl.glGetIntegerv(GL.GL_VIEWPORT, viewport, 0);
-		gl.glSelectBuffer(512, buffer);
-		gl.glRenderMode(GL2.GL_SELECT);
-		gl.glInitNames();
-
-		gl.glMatrixMode(GL2.GL_PROJECTION);
-		gl.glPushMatrix();
-		gl.glLoadIdentity();
-
-		glu.gluPickMatrix(selX, viewport[3] - selY, 1.0, 1.0, viewport, 0);
-		glu.gluPerspective(60.0, (float)viewport[2] / viewport[3], 1, 100000.0);
+	private boolean isIdle() {
+		return window_rendering_needed == 0 && screenshots.isIdle() && recorder == null && pickRequests.isEmpty()
+				&& frameActions.isEmpty();
+	}
 
-		// draw graph
-		renderScene(drawable.getGL().getGL2());
+	/* Called on the GL thread after every frame. Pausing from there does
+	 * not block, the animator stops before its next frame.
+	 */
+	private void parkIfIdle() {
+		synchronized (parkLock) {
+			// announce first, then check: a concurrent wakeAnimator either
+			// sees the flag or its work is seen here
+			animatorParked = true;
+			if (isIdle()) {
+				animator.pause();
+				log.fine("nothing to render, animator paused");
+			} else
+				animatorParked = false;
+		}
+	}
 
-		gl.glMatrixMode(GL2.GL_PROJECTION);
-		gl.glPopMatrix();
-		gl.glFlush();
-
-		hits = gl.glRenderMode(GL2.GL_RENDER);
-		// log.info("Selection run, got " + hits + " hits!");
-
-		for(int i = 0; i < hits; ++i) {
-			n = buffer.get();
-			z = (float) (buffer.get() & 0xffffffffL) / 0x7ffffff;
-			buffer.get();
-
-			// discard unnecessary stuff
-			//buffer.position(buffer.position() + n);
-			for(int j=0; j<n-1; ++j)
-				buffer.get();
-
-			n = buffer.get();
-			if(z < zmin) {
-				zmin = z;
-				first = n;
+	private void wakeAnimator() {
+		if (animatorParked)
+			synchronized (parkLock) {
+				if (animatorParked) {
+					animatorParked = false;
+					animator.resume();
+				}
 			}
-			log.info("Buffer: " + n + ", min distance: " + z);
-		}
-		synchronized (aCam) {
-			aCam.selectedObj = objectNameMap.get(first);
-			selectionRun = false;
-			aCam.notify();
-		}
 	}
 
 	@Override
@@ -281,47 +389,284 @@ class GLRenderer implements GLEventListener {
 		gl.glLoadIdentity();
 
 		// fovy, aspect, zNear, zFar
-		GLU.createGLU().gluPerspective(60, aspect, 1, 100000.0);
+		glu.gluPerspective(FOVY, aspect, Z_NEAR, Z_FAR);
+		FloatUtil.makePerspective(projection, 0, true, FOVY * FloatUtil.PI / 180, aspect, Z_NEAR, Z_FAR);
+		viewportWidth = width;
+		viewportHeight = height;
+		pixelsPerUnit = height / (2 * FloatUtil.tan(FOVY * FloatUtil.PI / 360));
 		log.fine("Reshaping drawing window");
 
-		window_rendering_needed = wconf.doubleBuffering?3:1;
+		scheduleRender();
 	}
 
 	void scheduleRender() {
 		window_rendering_needed = wconf.doubleBuffering?3:1;
+		wakeAnimator();
 	}
 
 	void scheduleScreenshot(String filename) {
-		screenshotFilename = filename;
-		makeScreenshot = true;
+		screenshots.request(filename == null ? screenshots.nextFileName() : new File(filename), null);
+		scheduleRender();
 	}
 
-	void scheduleSelection(int pFensterX, int pFensterY) {
-		selX = pFensterX; selY = pFensterY;
-		synchronized (aCam) {
-			selectionRun = true;
+	synchronized void startRecording(String pTarget, int pInterval, boolean pDropFrames) {
+		if (recorder != null)
+			throw new IllegalStateException("Es läuft bereits eine Aufnahme!");
+		recorder = new FrameRecorder(pTarget, wconf.screenshotFormat, pInterval, pDropFrames);
+		scheduleRender();
+	}
+
+	/* Blocks until the GL thread has read the last frames and the writers
+	 * are done. Returns the number of recorded frames. Called on the GL
+	 * thread itself (frame actions, pick callbacks, statistics listeners),
+	 * waiting for the next frame would never end, so the recording is
+	 * finished right away with the current context. If the animator has
+	 * stopped or does not render a frame within RECORDING_STOP_TIMEOUT,
+	 * the recording is finished without the GL. The lock is not held
+	 * while waiting, so the GL thread can always get it.
+	 */
+	int stopRecording() {
+		FrameRecorder rec;
+		synchronized (this) {
+			if ((rec = recorder) == null)
+				return 0;
+			rec.requestStop();
+		}
+		try {
+			if (Thread.currentThread() == glThread)
+				finishRecording(rec, GLContext.getCurrentGL().getGL2());
+			else {
+				wakeAnimator();
+				if (!animator.isStarted() || !rec.awaitHandedOver(RECORDING_STOP_TIMEOUT))
+					finishRecordingWithoutGL(rec);
+			}
+			return rec.awaitFinished();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return 0;
+		}
+	}
+
+	/* On the GL thread. Only the first call for a recording finishes it. */
+	private void finishRecording(FrameRecorder rec, GL2 gl) {
+		synchronized (this) {
+			if (recorder != rec)
+				return;
+			recorder = null;
+		}
+		rec.finish(gl);
+	}
+
+	/* On any thread, see FrameRecorder.finishWithoutGL. */
+	private void finishRecordingWithoutGL(FrameRecorder rec) {
+		synchronized (this) {
+			if (recorder != rec)
+				return;
+			recorder = null;
+		}
+		rec.finishWithoutGL();
+	}
+
+	CompletableFuture<BufferedImage> scheduleScreenshotImage() {
+		CompletableFuture<BufferedImage> result = new CompletableFuture<BufferedImage>();
+		screenshots.request(null, result);
+		scheduleRender();
+		return result;
+	}
+
+	/* Cast a ray from the camera through the window position (pX|pY),
+	 * measured from the upper left corner, and return the nearest visible
+	 * object it hits. This runs on the calling thread and does not need
+	 * the GL.
+	 */
+	GLObjekt pick(int pX, int pY) {
+		return new PickContext().pick(pX, pY);
+	}
+
+	/* Queue a pick which is resolved at the start of the next frame,
+	 * together with all other picks queued until then.
+	 */
+	CompletableFuture<GLObjekt> schedulePick(int pX, int pY) {
+		PickRequest r = new PickRequest(pX, pY);
+		pickRequests.add(r);
+		wakeAnimator();
+		return r.future;
+	}
+
+	private void resolvePicks() {
+		ArrayList<PickRequest> batch;
+		PickContext ctx;
+		PickRequest r;
+
+		if (pickRequests.isEmpty())
+			return;
+		// one camera snapshot and one pass over the index for all of them
+		batch = new ArrayList<PickRequest>();
+		ctx = new PickContext();
+		synchronized (spatialIndex) {
+			while ((r = pickRequests.poll()) != null) {
+				try {
+					r.result = ctx.pick(r.x, r.y);
+				} catch (RuntimeException e) {
+					r.error = e;
+				}
+				batch.add(r);
+			}
+		}
+		// outside of the lock, dependent actions may query the index again
+		for (PickRequest p : batch)
+			if (p.error != null)
+				p.future.completeExceptionally(p.error);
+			else
+				p.future.complete(p.result);
+	}
+
+	/* Register an action which is run on the GL thread at the start of
+	 * every frame, before the scene is drawn. With pStep > 0, pAction is
+	 * called with the fixed time step as often as the elapsed time allows
+	 * and pInterpolation (optional) once per frame with the fraction of a
+	 * step that is left over. Otherwise pAction gets the time since the
+	 * last frame. All times are in seconds.
+	 */
+	void addFrameAction(double pStep, Consumer<Double> pAction, Consumer<Double> pInterpolation) {
+		frameActions.add(new FrameAction(pStep, pAction, pInterpolation));
+		wakeAnimator();
+	}
+
+	void removeFrameAction(Consumer<Double> pAction) {
+		for (FrameAction a : frameActions)
+			if (a.action == pAction || a.interpolation == pAction)
+				frameActions.remove(a);
+	}
+
+	private void runFrameActions() {
+		long now;
+
+		if (frameActions.isEmpty())
+			return;
+		now = System.nanoTime();
+		for (FrameAction a : frameActions)
+			try {
+				a.run(now);
+			} catch (RuntimeException e) {
+				// don't repeat the same error in every frame
+				log.log(Level.SEVERE, "frame action failed and has been removed", e);
+				frameActions.remove(a);
+			}
+	}
+
+	private static final class FrameAction {
+		// at most this many fixed steps per frame, so that a slow step
+		// can't make the simulation fall further and further behind
+		private final static int MAX_STEPS_PER_FRAME = 8;
+		final double step;
+		final Consumer<Double> action, interpolation;
+		private long lastTime = -1;
+		private double accumulator = 0;
+
+		FrameAction(double pStep, Consumer<Double> pAction, Consumer<Double> pInterpolation) {
+			step = pStep;
+			action = pAction;
+			interpolation = pInterpolation;
+		}
+
+		void run(long pNow) {
+			double dt = lastTime < 0 ? 0 : (pNow - lastTime) / 1e9;
+			int n = 0;
+
+			lastTime = pNow;
+			if (step <= 0) {
+				action.accept(dt);
+				return;
+			}
+			accumulator += dt;
+			for (; accumulator >= step && n < MAX_STEPS_PER_FRAME; ++n) {
+				action.accept(step);
+				accumulator -= step;
+			}
+			if (n == MAX_STEPS_PER_FRAME)
+				accumulator %= step;
+			if (interpolation != null)
+				interpolation.accept(accumulator / step);
+		}
+	}
+
+	private static final class PickRequest {
+		final int x, y;
+		final CompletableFuture<GLObjekt> future = new CompletableFuture<GLObjekt>();
+		GLObjekt result;
+		RuntimeException error;
+
+		PickRequest(int pX, int pY) {
+			x = pX;
+			y = pY;
+		}
+	}
+
+	/* Camera, projection and window size at the moment of creation, turns
+	 * window positions into rays.
+	 */
+	private final class PickContext {
+		private final float[] modelView = new float[16], projection = new float[16], mat1 = new float[16],
+				mat2 = new float[16], vec = new float[4];
+		private final int[] viewport = { 0, 0, viewportWidth, viewportHeight };
+		private final Ray ray = new Ray();
+
+		PickContext() {
+			synchronized (aCam) {
+				FloatUtil.makeLookAt(modelView, 0, aCam.aPos, 0, aCam.aLookAt, 0, aCam.aUp, 0, mat1);
+			}
+			if (viewport[2] > 0 && viewport[3] > 0)
+				FloatUtil.makePerspective(projection, 0, true, FOVY * FloatUtil.PI / 180,
+						(float) viewport[2] / viewport[3], Z_NEAR, Z_FAR);
+		}
+
+		GLObjekt pick(int pX, int pY) {
+			if (viewport[2] <= 0 || viewport[3] <= 0 || !FloatUtil.mapWinToRay(pX, viewport[3] - pY, 0, 1,
+					modelView, 0, projection, 0, viewport, 0, ray, mat1, mat2, vec))
+				return null;
+			return spatialIndex.pick(ray.orig, ray.dir);
 		}
 	}
 
 	private void renderScene(GL2 gl) {
-		Map<GLTextureImpl, ListIterator<DisplayItem>> transparencyIteratorMap = 
-				new ConcurrentHashMap<GLTextur.GLTextureImpl, ListIterator<DisplayItem>>(
-								renderItemMap.size());
-		ListIterator<DisplayItem> lit;
-		DisplayItem di = null;
+		DisplayItem di;
+		GLTextureImpl tImp;
+
+		if (drawListModCount != renderMapModCount.get())
+			rebuildDrawList();
+		// deleted objects are no longer in the draw list now
+		geometryCache.processReleases(gl);
+		geometryCache.beginFrame();
+
+		// take over everything user threads have changed since the last
+		// frame; from here on, rendering reads the snapshots without locks
+		GLBewegbaresObjekt changed;
+		while ((changed = transformUpdates.poll()) != null)
+			changed.takeRenderSnapshot();
+		// the octree follows the snapshots, so culling and queries agree
+		// with what is drawn
+		spatialIndex.update();
+		synchronized (aCam) {
+			System.arraycopy(aCam.aPos, 0, viewEye, 0, 3);
+			System.arraycopy(aCam.aLookAt, 0, viewLookAt, 0, 3);
+			System.arraycopy(aCam.aUp, 0, viewUp, 0, 3);
+		}
 
-		GLU glu = GLU.createGLU();
+		// forget about anything that happened between two frames
+		state.begin(gl);
 		gl.glMatrixMode(GL2.GL_MODELVIEW);
 
 		gl.glClear(GL2.GL_COLOR_BUFFER_BIT | GL2.GL_DEPTH_BUFFER_BIT);
 		gl.glLoadIdentity(); // reset
 		doLighting(gl);
 
-		synchronized (aCam) {
-			renderPreObjects(gl, glu);
-		}
+		renderPreObjects(gl, glu);
+		boundTexture = null;
+		frameStamp++;
+		if (wconf.frustumCulling)
+			spatialIndex.cull(frustum, frameStamp);
 
-		GLTextureImpl tImp = null;
 		// TODO this is why I needed a GLHimmel reference:
 		// render sky before all other objects
 		if (sky != null) {
@@ -330,9 +675,9 @@ class GLRenderer implements GLEventListener {
 				tImp = skyTexture.aTexturImpl;
 				tImp.load(gl);
 				if (tImp.isReady()) {
-					tImp.getTexture().enable(gl);
-					tImp.getTexture().bind(gl);
-					log.fine("enabling texture " + tImp.aTexFile);
+					state.bindTexture(tImp.getTexture());
+					if (log.isLoggable(Level.FINE))
+						log.fine("enabling texture " + tImp.aTexFile);
 				}
 			}
 			if (sky.aVisible) {
@@ -341,123 +686,241 @@ class GLRenderer implements GLEventListener {
 			}
 		}
 
-		// render intransparent objects
-		for (ConcurrentHashMap.Entry<GLTextureImpl, CopyOnWriteArrayList<DisplayItem>> entry : renderItemMap
-				.entrySet()) {
-			// load texture
-			tImp = entry.getKey();
-			tImp.load(gl);
-			if (tImp.isReady()) {
-				tImp.getTexture().enable(gl);
-				tImp.getTexture().bind(gl);
-				log.fine("enabling texture " + tImp.aTexFile);
-			} else
-				gl.glDisable(GL2.GL_TEXTURE_2D);
-
-			// render intransparent objects
-			if ((lit = entry.getValue().listIterator()).hasNext()) {
-				while (lit.hasNext() && !(di = lit.next()).isTransparent())
-					if(di.aVisible)
-						di.render(gl, glu);
-				if (di.isTransparent()) {
-					lit.previous();
-					transparencyIteratorMap.put(tImp, lit);
+		// lights first, then opaque objects front to back grouped by state
+		frameDrawnObjects = frameCulledObjects = 0;
+		retainTransparentItems();
+		if (drawListSize > DrawList.INDEX_MASK)
+			renderUnsorted(gl);
+		else {
+			drawList.clear();
+			for (int i = 0; i < drawListSize; ++i)
+				if ((di = drawItems[i]).aVisible) {
+					if (di.isTransparent() && inTransparentPass[i])
+						continue;
+					if (isOutsideFrustum(di))
+						frameCulledObjects++;
+					else if (!di.isTransparent())
+						drawList.add(sortKey(di, i));
+					else
+						addTransparentItem(di, i);
 				}
-			}
+			drawList.sort();
+
+			for (int i = 0, n = drawList.size(); i < n; ++i)
+				renderItem(gl, drawList.index(i));
 		}
 
-		for(Map.Entry<GLTextureImpl,ListIterator<DisplayItem>> entry : transparencyIteratorMap.entrySet()) {
-			tImp = entry.getKey();
-			tImp.load(gl);
-			if (tImp.isReady()) {
-				tImp.getTexture().enable(gl);
-				tImp.getTexture().bind(gl);
-				log.fine("enabling texture " + tImp.aTexFile);
-			} else
-				gl.glDisable(GL2.GL_TEXTURE_2D);
+		// then transparent objects back to front, regardless of their
+		// texture
+		sortTransparentItems();
+		for (int i = 0; i < transparentCount; ++i)
+			renderItem(gl, transparentOrder[i]);
+		drawnObjects = frameDrawnObjects;
+		culledObjects = frameCulledObjects;
 
-			// render transparent objects
-			lit = entry.getValue();
-			while(lit.hasNext())
-				if((di = lit.next()).aVisible)
-					di.render(gl, glu);
-		}
-		gl.glDisable(GL2.GL_TEXTURE_2D);
+		// the last geometry batch is still bound
+		state.unbindGeometry();
+		state.disable(GL2.GL_TEXTURE_2D);
 
-		synchronized (aCam) {
-			renderPostObjects(gl, glu);
-		}
+		renderPostObjects(gl, glu);
 	}
 
-	private void updateFPSView() {
-		long currentAnimFPSUpdateTime = animator.getLastFPSUpdateTime();
-		if (currentAnimFPSUpdateTime != animatorLastFPSTime) {
-			win.updateFPS(animator.getLastFPS());
-			animatorLastFPSTime = currentAnimFPSUpdateTime;
+	private void renderItem(GL2 gl, int pIndex) {
+		DisplayItem di = drawItems[pIndex];
+		GLTextureImpl tImp = drawTextures[pIndex];
+		if (tImp != boundTexture)
+			bindTexture(gl, boundTexture = tImp);
+		if (di instanceof GLObjekt)
+			frameDrawnObjects++;
+		di.render(gl, glu);
+	}
+
+	/* With too many items to encode their index in a sort key, the lights
+	 * are drawn first and then the opaque objects in the order of the draw
+	 * list, without grouping them by state. Transparent items are collected
+	 * for their pass as usual.
+	 */
+	private void renderUnsorted(GL2 gl) {
+		DisplayItem di;
+
+		if (!unsortedWarning) {
+			log.warning("more than " + DrawList.INDEX_MASK + " objects in the scene, they are drawn unsorted");
+			unsortedWarning = true;
 		}
+		for (int pass = 0; pass < 2; ++pass)
+			for (int i = 0; i < drawListSize; ++i)
+				// lights are everything that is not a GLObjekt, see sortKey
+				if ((di = drawItems[i]).aVisible && (di instanceof GLObjekt) == (pass == 1)) {
+					if (di.isTransparent() && inTransparentPass[i])
+						continue;
+					if (isOutsideFrustum(di))
+						frameCulledObjects++;
+					else if (!di.isTransparent())
+						renderItem(gl, i);
+					else
+						addTransparentItem(di, i);
+				}
 	}
 
-	private void takeScreenshot(GL gl) {
-		GLProfile glp = GLProfile.getDefault();
+	private long sortKey(DisplayItem di, int pIndex) {
+		if (!(di instanceof GLObjekt))
+			return DrawList.makeKey(DrawList.LAYER_LIGHT, 0, 0, 0, 0, 0, pIndex);
 
-		// take screenshot
-		AWTGLReadBufferUtil screenshot = new AWTGLReadBufferUtil(glp, false);
-		BufferedImage bi = screenshot.readPixelsToBufferedImage(gl, true);
-
-		File f;
-		if(screenshotFilename == null)
-			f = new File(
-				    wconf.screenshotPrefix + "-"
-				  + getNextScreenshotNumber(wconf.screenshotFormat, wconf.screenshotPrefix)
-				  + "." + wconf.screenshotFormat
-				);
-			else
-				f = new File(screenshotFilename);
+		GLObjekt obj = (GLObjekt) di;
+		return DrawList.makeKey(DrawList.LAYER_OPAQUE, drawTextures[pIndex].sortId,
+				obj.conf.objectRenderMode.ordinal(), obj.geometryId(), obj.materialKey(),
+				DrawList.quantizeDepth(obj.viewDepth(viewEye, viewDir), Z_FAR), pIndex);
+	}
 
-		try {
-			ImageIO.write(bi, wconf.screenshotFormat, f);
-			log.info("Screenshot taken and saved to " + f.getCanonicalPath());
-		} catch (IOException e) {
-			e.printStackTrace();
+	/* Keep last frame's transparent items that are still visible and
+	 * transparent in their old order and update their depths.
+	 */
+	private void retainTransparentItems() {
+		DisplayItem di;
+		int n = 0, idx;
+
+		for (int i = 0; i < transparentCount; ++i) {
+			di = drawItems[idx = transparentOrder[i]];
+			// culled items are tested again with the new ones
+			if (di.aVisible && di.isTransparent() && !isOutsideFrustum(di)) {
+				transparentOrder[n] = idx;
+				transparentDepth[n++] = di.viewDepth(viewEye, viewDir);
+			} else
+				inTransparentPass[idx] = false;
 		}
+		transparentCount = n;
 	}
 
-	/* get the next free consecutive number to name the next screenshot
+	/* Whether the octree found di completely outside of the view frustum
+	 * in this frame. Objects which are not in the octree (no bounds) and
+	 * objects whose geometry is about to be regenerated are always drawn.
 	 */
-	private static String getNextScreenshotNumber(final String fileFormat, final String filePrefix) {
-		/* Here, with Java 8, one could use a lambda expression. Something like
+	private boolean isOutsideFrustum(DisplayItem di) {
+		if (!wconf.frustumCulling || !(di instanceof GLBewegbaresObjekt))
+			return false;
+		GLBewegbaresObjekt obj = (GLBewegbaresObjekt) di;
+		if (obj.needsRedraw || obj.indexNode == null)
+			return false;
+		return obj.visibleStamp != frameStamp;
+	}
 
-		String[] files = new File(".").list((dir, filename) -> { return true; });
-		return null;
-		*/
-		String[] files;
-		Arrays.sort(files = new File(".").list(new FilenameFilter() {
-			private Pattern p = Pattern.compile("-\\d\\d\\d\\d\\." + fileFormat + "$"); 
-
-			@Override
-			public boolean accept(File dir, String filename) {
-				boolean res;
-				res = filename.startsWith(filePrefix);
-				res &= p.matcher(filename).find();
-				return res;
+	int getDrawnObjects() {
+		return drawnObjects;
+	}
+
+	int getCulledObjects() {
+		return culledObjects;
+	}
+
+	private void addTransparentItem(DisplayItem di, int pIndex) {
+		inTransparentPass[pIndex] = true;
+		transparentOrder[transparentCount] = pIndex;
+		transparentDepth[transparentCount++] = di.viewDepth(viewEye, viewDir);
+	}
+
+	/* Sort the transparent items back to front. Between two frames the
+	 * order rarely changes much, so an insertion sort is close to linear.
+	 * If it needs too many moves (camera jumps, many new items), switch
+	 * to a radix sort over the depth keys.
+	 */
+	private void sortTransparentItems() {
+		int n = transparentCount, budget = 4 * n, idx, j;
+		float d;
+
+		for (int i = 1; i < n && budget >= 0; ++i) {
+			d = transparentDepth[i];
+			idx = transparentOrder[i];
+			for (j = i - 1; j >= 0 && transparentDepth[j] < d; --j, --budget) {
+				transparentDepth[j + 1] = transparentDepth[j];
+				transparentOrder[j + 1] = transparentOrder[j];
 			}
-		}));
-		
-		String res = "0001";
-		
-		if(files.length != 0) {			
-			res = files[files.length-1];
-			res = res.substring(res.length()-8, res.length()-4);
-			res = String.format("%04d", Integer.parseInt(res) + 1);
+			transparentDepth[j + 1] = d;
+			transparentOrder[j + 1] = idx;
+		}
+		if (budget >= 0)
+			return;
+
+		transparentList.clear();
+		for (int i = 0; i < n; ++i)
+			transparentList.add(DrawList.makeDepthKey(transparentDepth[i], transparentOrder[i]));
+		transparentList.sort();
+		// depths are recomputed before the next sort, only the order matters
+		for (int i = 0; i < n; ++i)
+			transparentOrder[i] = transparentList.depthIndex(i);
+	}
+
+	private void bindTexture(GL2 gl, GLTextureImpl tImp) {
+		tImp.load(gl);
+		if (tImp.isReady()) {
+			state.bindTexture(tImp.getTexture());
+			if (log.isLoggable(Level.FINE))
+				log.fine("enabling texture " + tImp.aTexFile);
+		} else
+			state.disable(GL2.GL_TEXTURE_2D);
+	}
+
+	/* Flatten renderItemMap into the renderer-owned draw list. This only
+	 * happens when objects were added, removed or got a new texture, so
+	 * a static scene renders without touching any iterator of the map.
+	 */
+	private void rebuildDrawList() {
+		int modCount = renderMapModCount.get(), n = 0;
+
+		for (Map.Entry<GLTextureImpl, CopyOnWriteArrayList<DisplayItem>> entry : renderItemMap.entrySet())
+			for (DisplayItem di : entry.getValue()) {
+				if (n == drawItems.length) {
+					drawItems = Arrays.copyOf(drawItems, 2 * n);
+					drawTextures = Arrays.copyOf(drawTextures, 2 * n);
+				}
+				drawItems[n] = di;
+				drawTextures[n++] = entry.getKey();
+			}
+		for (int i = n; i < drawListSize; ++i) {
+			drawItems[i] = null;
+			drawTextures[i] = null;
 		}
+		drawListSize = n;
+		drawList.ensureCapacity(drawItems.length);
+
+		// indices have changed, start the transparent order from scratch
+		Arrays.fill(inTransparentPass, false);
+		transparentCount = 0;
+		if (transparentOrder.length < drawItems.length) {
+			transparentOrder = new int[drawItems.length];
+			transparentDepth = new float[drawItems.length];
+			inTransparentPass = new boolean[drawItems.length];
+			transparentList.ensureCapacity(drawItems.length);
+		}
+		drawListModCount = modCount;
+	}
 
-		return res;
+	private void updateFPSView() {
+		long currentAnimFPSUpdateTime = animator.getLastFPSUpdateTime();
+		if (currentAnimFPSUpdateTime != animatorLastFPSTime) {
+			win.updateFPS(animator.getLastFPS());
+			animatorLastFPSTime = currentAnimFPSUpdateTime;
+			if (log.isLoggable(Level.FINE))
+				log.fine("GL state calls issued: " + state.getIssuedCalls() + ", suppressed: "
+						+ state.getSuppressedCalls() + ", geometry batches: " + state.getGeometryBatches());
+		}
 	}
 
 	private void renderPreObjects(GL2 gl, GLU glu) {
 		// camera position and look-at point
-		glu.gluLookAt(aCam.aPos[0], aCam.aPos[1], aCam.aPos[2], aCam.aLookAt[0], aCam.aLookAt[1], aCam.aLookAt[2],
-				aCam.aUp[0], aCam.aUp[1], aCam.aUp[2]);
+		glu.gluLookAt(viewEye[0], viewEye[1], viewEye[2], viewLookAt[0], viewLookAt[1], viewLookAt[2],
+				viewUp[0], viewUp[1], viewUp[2]);
+
+		// viewing direction for depth sorting
+		VectorUtil.subVec3(viewDir, viewLookAt, viewEye);
+		if (VectorUtil.normSquareVec3(viewDir) == 0) {
+			viewDir[0] = viewDir[1] = 0;
+			viewDir[2] = -1;
+		} else
+			VectorUtil.normalizeVec3(viewDir);
+
+		FloatUtil.makeLookAt(modelView, 0, viewEye, 0, viewLookAt, 0, viewUp, 0, matTmp);
+		FloatUtil.multMatrix(projection, modelView, pmv);
+		frustum.updateByPMV(pmv, 0);
 	}
 
 	private void renderPostObjects(GL2 gl, GLU glu) {
@@ -485,10 +948,10 @@ class GLRenderer implements GLEventListener {
 		VectorUtil.normalizeVec3(dirVec[1]);
 		VectorUtil.scaleVec3(dirVec[1], dirVec[1], 10);
 
-		gl.glDisable(GL2.GL_LIGHTING);
-		gl.glEnable(GL2.GL_COLOR_MATERIAL);
-		gl.glDisable(GL2.GL_TEXTURE_2D);
-		gl.glPolygonMode(GL2.GL_FRONT_AND_BACK, GL2.GL_LINE);
+		state.disable(GL2.GL_LIGHTING);
+		state.enable(GL2.GL_COLOR_MATERIAL);
+		state.disable(GL2.GL_TEXTURE_2D);
+		state.polygonMode(GL2.GL_LINE);
 		gl.glLineWidth(1);
 		for (int k = 0; k < 2; ++k) {
 			currPos = aCam.aLookAt.clone();
@@ -502,10 +965,8 @@ class GLRenderer implements GLEventListener {
 			gl.glEnd();
 		}
 
-		if (wconf.globalLighting)
-			gl.glEnable(GL2.GL_LIGHTING);
-
-		gl.glDisable(GL2.GL_COLOR_MATERIAL);
+		state.setEnabled(GL2.GL_LIGHTING, wconf.globalLighting);
+		state.disable(GL2.GL_COLOR_MATERIAL);
 		gl.glLineWidth(wconf.wireframeLineWidth);
 	}
 */
@@ -513,10 +974,10 @@ class GLRenderer implements GLEventListener {
 	private void drawAxes(GL2 gl) {
 		double axesLength = Math.ceil(wconf.axesLength/20)*20;
 		
-		gl.glDisable(GL2.GL_LIGHTING);
-		gl.glEnable(GL2.GL_COLOR_MATERIAL);
-		gl.glDisable(GL2.GL_TEXTURE_2D);
-		gl.glPolygonMode(GL2.GL_FRONT_AND_BACK, GL2.GL_LINE);
+		state.disable(GL2.GL_LIGHTING);
+		state.enable(GL2.GL_COLOR_MATERIAL);
+		state.disable(GL2.GL_TEXTURE_2D);
+		state.polygonMode(GL2.GL_LINE);
 		gl.glLineWidth(wconf.axesWidth);
 		gl.glBegin(GL2.GL_LINE_STRIP);
 		for (int i = 0; i < axesLength; i += 20) {
@@ -557,33 +1018,29 @@ class GLRenderer implements GLEventListener {
 		gl.glVertex3f(0, -10, (float) axesLength - 20);
 		gl.glEnd();
 
-		if (wconf.globalLighting)
-			gl.glEnable(GL2.GL_LIGHTING);
-
-		gl.glDisable(GL2.GL_COLOR_MATERIAL);
+		state.setEnabled(GL2.GL_LIGHTING, wconf.globalLighting);
+		state.disable(GL2.GL_COLOR_MATERIAL);
 		gl.glLineWidth(wconf.wireframeLineWidth);
 	}
 
 	private void drawLookAt(GL2 gl) {
-		gl.glDisable(GL2.GL_LIGHTING);
-		gl.glEnable(GL2.GL_COLOR_MATERIAL);
-		gl.glDisable(GL2.GL_TEXTURE_2D);
-		gl.glPolygonMode(GL2.GL_FRONT_AND_BACK, GL2.GL_LINE);
+		state.disable(GL2.GL_LIGHTING);
+		state.enable(GL2.GL_COLOR_MATERIAL);
+		state.disable(GL2.GL_TEXTURE_2D);
+		state.polygonMode(GL2.GL_LINE);
 
 		gl.glBegin(GL2.GL_LINES);
 		gl.glColor3f(1, 1, 1);
-		gl.glVertex3d(aCam.aLookAt[0]-5, aCam.aLookAt[1], aCam.aLookAt[2]);
-		gl.glVertex3d(aCam.aLookAt[0]+5, aCam.aLookAt[1], aCam.aLookAt[2]);
-		gl.glVertex3d(aCam.aLookAt[0], aCam.aLookAt[1]-5, aCam.aLookAt[2]);
-		gl.glVertex3d(aCam.aLookAt[0], aCam.aLookAt[1]+5, aCam.aLookAt[2]);
-		gl.glVertex3d(aCam.aLookAt[0], aCam.aLookAt[1], aCam.aLookAt[2]-5);
-		gl.glVertex3d(aCam.aLookAt[0], aCam.aLookAt[1], aCam.aLookAt[2]+5);
+		gl.glVertex3d(viewLookAt[0]-5, viewLookAt[1], viewLookAt[2]);
+		gl.glVertex3d(viewLookAt[0]+5, viewLookAt[1], viewLookAt[2]);
+		gl.glVertex3d(viewLookAt[0], viewLookAt[1]-5, viewLookAt[2]);
+		gl.glVertex3d(viewLookAt[0], viewLookAt[1]+5, viewLookAt[2]);
+		gl.glVertex3d(viewLookAt[0], viewLookAt[1], viewLookAt[2]-5);
+		gl.glVertex3d(viewLookAt[0], viewLookAt[1], viewLookAt[2]+5);
 		gl.glEnd();
 		
-		if (wconf.globalLighting)
-			gl.glEnable(GL2.GL_LIGHTING);
-
-		gl.glDisable(GL2.GL_COLOR_MATERIAL);
+		state.setEnabled(GL2.GL_LIGHTING, wconf.globalLighting);
+		state.disable(GL2.GL_COLOR_MATERIAL);
 		gl.glLineWidth(wconf.wireframeLineWidth);
 	}
 
@@ -0,0 +1,268 @@
+package bGLOOP;
+
+import java.util.Arrays;
+
+import com.jogamp.opengl.GL2;
+import com.jogamp.opengl.util.texture.Texture;
+
+/* Shadows the part of the fixed function state that bGLOOP changes per
+ * object: a few enable flags, polygon mode, cull face, texture
+ * environment, the bound 2D texture, the bound VBO geometry with its
+ * primitive restart setting and the front material. Calls that would
+ * set a value which is already current are dropped and counted.
+ *
+ * The cache is owned by the renderer and only used on the GL thread. It
+ * is invalidated at the start of every frame and whenever a display list
+ * or JOGL utility may have changed the state behind its back.
+ */
+final class GLStateCache {
+	private final static byte UNKNOWN = 0, ON = 1, OFF = 2;
+	private final static int[] CAPS = { GL2.GL_LIGHTING, GL2.GL_NORMALIZE, GL2.GL_TEXTURE_2D, GL2.GL_CULL_FACE,
+			GL2.GL_DEPTH_TEST, GL2.GL_COLOR_MATERIAL, GL2.GL_BLEND, GL2.GL_LIGHT0, GL2.GL_LIGHT1, GL2.GL_LIGHT2,
+			GL2.GL_LIGHT3, GL2.GL_LIGHT4, GL2.GL_LIGHT5, GL2.GL_LIGHT6, GL2.GL_LIGHT7 };
+
+	private GL2 gl;
+	private final byte[] capState = new byte[CAPS.length];
+	private int polygonMode, cullFace, texEnvMode, boundTexture;
+	private boolean materialValid;
+	private final float[] ambient = new float[4], diffuse = new float[4], specular = new float[4],
+			emission = new float[4];
+	private float shininess;
+	private Geometry boundGeometry;
+	// primitive restart is only touched for indexed geometries, so it is
+	// never switched on a GL without it; unlike the rest it survives
+	// invalidate, as unbindGeometry switches it off
+	private boolean restartOn = false;
+	private int restartIndex = 0;
+	private long geometryBatches = 0;
+	private long issuedCalls = 0, suppressedCalls = 0;
+	// what was drawn, for the statistics; triangles and vertices are only
+	// known for geometry bGLOOP generates itself
+	private long drawCalls = 0, triangles = 0, vertices = 0, textureBinds = 0;
+
+	GLStateCache() {
+		invalidate();
+	}
+
+	void begin(GL2 pGL) {
+		gl = pGL;
+		invalidate();
+	}
+
+	/* Assumes that no geometry is bound, see unbindGeometry. */
+	void invalidate() {
+		boundGeometry = null;
+		Arrays.fill(capState, UNKNOWN);
+		polygonMode = cullFace = texEnvMode = -1;
+		invalidateTexture();
+		invalidateMaterial();
+	}
+
+	void invalidateTexture() {
+		boundTexture = -1;
+		capState[slot(GL2.GL_TEXTURE_2D)] = UNKNOWN;
+	}
+
+	void invalidateMaterial() {
+		materialValid = false;
+	}
+
+	void enable(int pCap) {
+		setEnabled(pCap, true);
+	}
+
+	void disable(int pCap) {
+		setEnabled(pCap, false);
+	}
+
+	void setEnabled(int pCap, boolean pOn) {
+		int s = slot(pCap);
+		byte wanted = pOn ? ON : OFF;
+		if (s >= 0) {
+			if (capState[s] == wanted) {
+				suppressedCalls++;
+				return;
+			}
+			capState[s] = wanted;
+		}
+		issuedCalls++;
+		if (pOn)
+			gl.glEnable(pCap);
+		else
+			gl.glDisable(pCap);
+	}
+
+	/* Negative modes (Darstellungsmodus.NV) leave the current mode alone. */
+	void polygonMode(int pMode) {
+		if (pMode < 0)
+			return;
+		if (polygonMode == pMode) {
+			suppressedCalls++;
+			return;
+		}
+		issuedCalls++;
+		gl.glPolygonMode(GL2.GL_FRONT_AND_BACK, polygonMode = pMode);
+	}
+
+	void cullFace(int pFace) {
+		if (cullFace == pFace) {
+			suppressedCalls++;
+			return;
+		}
+		issuedCalls++;
+		gl.glCullFace(cullFace = pFace);
+	}
+
+	void texEnvMode(int pMode) {
+		if (texEnvMode == pMode) {
+			suppressedCalls++;
+			return;
+		}
+		issuedCalls++;
+		gl.glTexEnvi(GL2.GL_TEXTURE_ENV, GL2.GL_TEXTURE_ENV_MODE, texEnvMode = pMode);
+	}
+
+	void bindTexture(Texture pTexture) {
+		if (pTexture.getTarget() != GL2.GL_TEXTURE_2D) {
+			// not tracked, e.g. rectangle textures
+			pTexture.enable(gl);
+			pTexture.bind(gl);
+			issuedCalls += 2;
+			textureBinds++;
+			invalidateTexture();
+			return;
+		}
+		enable(GL2.GL_TEXTURE_2D);
+		int id = pTexture.getTextureObject();
+		if (boundTexture == id) {
+			suppressedCalls++;
+			return;
+		}
+		issuedCalls++;
+		textureBinds++;
+		gl.glBindTexture(GL2.GL_TEXTURE_2D, boundTexture = id);
+	}
+
+	/* Bind the VBO of pGeometry and set up the vertex arrays. Consecutive
+	 * objects with the same geometry form a batch which is bound once.
+	 */
+	void bindGeometry(Geometry pGeometry) {
+		if (boundGeometry == pGeometry) {
+			suppressedCalls += 4;
+			return;
+		}
+		if (boundGeometry == null) {
+			gl.glEnableClientState(GL2.GL_VERTEX_ARRAY);
+			gl.glEnableClientState(GL2.GL_NORMAL_ARRAY);
+			gl.glEnableClientState(GL2.GL_TEXTURE_COORD_ARRAY);
+			issuedCalls += 3;
+		} else
+			suppressedCalls += 3;
+		pGeometry.bind(gl);
+		issuedCalls += 4;
+		geometryBatches++;
+		boundGeometry = pGeometry;
+		primitiveRestart(pGeometry.indexName != -1 && pGeometry.primitiveRestart, pGeometry.restartIndex);
+	}
+
+	private void primitiveRestart(boolean pOn, int pIndex) {
+		if (pOn != restartOn) {
+			issuedCalls++;
+			if (pOn)
+				gl.glEnable(GL2.GL_PRIMITIVE_RESTART);
+			else
+				gl.glDisable(GL2.GL_PRIMITIVE_RESTART);
+			restartOn = pOn;
+		}
+		if (!pOn)
+			return;
+		if (restartIndex == pIndex) {
+			suppressedCalls++;
+			return;
+		}
+		issuedCalls++;
+		gl.glPrimitiveRestartIndex(restartIndex = pIndex);
+	}
+
+	/* Must be called before anything else uses vertex arrays or buffer
+	 * bindings, and at the end of the frame.
+	 */
+	void unbindGeometry() {
+		if (boundGeometry == null)
+			return;
+		gl.glDisableClientState(GL2.GL_VERTEX_ARRAY);
+		gl.glDisableClientState(GL2.GL_NORMAL_ARRAY);
+		gl.glDisableClientState(GL2.GL_TEXTURE_COORD_ARRAY);
+		gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
+		gl.glBindBuffer(GL2.GL_ELEMENT_ARRAY_BUFFER, 0);
+		issuedCalls += 5;
+		primitiveRestart(false, 0);
+		boundGeometry = null;
+	}
+
+	void material(float[] pAmbient, float[] pDiffuse, float[] pSpecular, float[] pEmission, float pShininess) {
+		materialfv(GL2.GL_AMBIENT, ambient, pAmbient);
+		materialfv(GL2.GL_DIFFUSE, diffuse, pDiffuse);
+		materialfv(GL2.GL_SPECULAR, specular, pSpecular);
+		materialfv(GL2.GL_EMISSION, emission, pEmission);
+		if (materialValid && shininess == pShininess)
+			suppressedCalls++;
+		else {
+			issuedCalls++;
+			gl.glMaterialf(GL2.GL_FRONT, GL2.GL_SHININESS, shininess = pShininess);
+		}
+		materialValid = true;
+	}
+
+	private void materialfv(int pName, float[] pCurrent, float[] pWanted) {
+		if (materialValid && pCurrent[0] == pWanted[0] && pCurrent[1] == pWanted[1]
+				&& pCurrent[2] == pWanted[2] && pCurrent[3] == pWanted[3]) {
+			suppressedCalls++;
+			return;
+		}
+		System.arraycopy(pWanted, 0, pCurrent, 0, 4);
+		issuedCalls++;
+		gl.glMaterialfv(GL2.GL_FRONT, pName, pWanted, 0);
+	}
+
+	void countDraw(int pCalls, int pTriangles, int pVertices) {
+		drawCalls += pCalls;
+		triangles += pTriangles;
+		vertices += pVertices;
+	}
+
+	long getIssuedCalls() {
+		return issuedCalls;
+	}
+
+	long getSuppressedCalls() {
+		return suppressedCalls;
+	}
+
+	long getGeometryBatches() {
+		return geometryBatches;
+	}
+
+	long getDrawCalls() {
+		return drawCalls;
+	}
+
+	long getTriangles() {
+		return triangles;
+	}
+
+	long getVertices() {
+		return vertices;
+	}
+
+	long getTextureBinds() {
+		return textureBinds;
+	}
+
+	private static int slot(int pCap) {
+		for (int i = 0; i < CAPS.length; ++i)
+			if (CAPS[i] == pCap)
+				return i;
+		return -1;
+	}
+}
@@ -0,0 +1,151 @@
+package bGLOOP;
+
+/** Kennzahlen eines gezeichneten Bildes. Ein Objekt dieser Klasse ändert
+ * sich nicht mehr, für das nächste Bild gibt es ein neues. Es wird von
+ * {@link GLKamera#gibStatistik()} geliefert oder an die mit
+ * {@link GLKamera#beobachteStatistik(java.util.function.Consumer)}
+ * angemeldeten Beobachter übergeben.<br>
+ * Zeiten werden in Millisekunden angegeben. Median und 99%-Quantil
+ * beziehen sich auf die letzten {@value #FENSTER} gezeichneten Bilder.
+ */
+public final class GLStatistik {
+	/** Anzahl der Bilder, über die Median und 99%-Quantil gebildet werden. */
+	public final static int FENSTER = 256;
+
+	final long frame;
+	final int drawCalls, stateChanges, triangles, vertices, drawnObjects, culledObjects, textureBinds,
+			builtDisplayLists, builtVBOs;
+	final double cpuTime, cpuTimeP50, cpuTimeP99, gpuTime, gpuTimeP50, gpuTimeP99, fps;
+
+	GLStatistik(long pFrame, int pDrawCalls, int pStateChanges, int pTriangles, int pVertices, int pDrawn,
+			int pCulled, int pTextureBinds, int pDisplayLists, int pVBOs, double pCpuTime, double pCpuP50,
+			double pCpuP99, double pGpuTime, double pGpuP50, double pGpuP99, double pFps) {
+		frame = pFrame;
+		drawCalls = pDrawCalls;
+		stateChanges = pStateChanges;
+		triangles = pTriangles;
+		vertices = pVertices;
+		drawnObjects = pDrawn;
+		culledObjects = pCulled;
+		textureBinds = pTextureBinds;
+		builtDisplayLists = pDisplayLists;
+		builtVBOs = pVBOs;
+		cpuTime = pCpuTime;
+		cpuTimeP50 = pCpuP50;
+		cpuTimeP99 = pCpuP99;
+		gpuTime = pGpuTime;
+		gpuTimeP50 = pGpuP50;
+		gpuTimeP99 = pGpuP99;
+		fps = pFps;
+	}
+
+	/** @return Laufende Nummer des Bildes */
+	public long gibBildnummer() {
+		return frame;
+	}
+
+	/** @return Anzahl der Zeichenbefehle an die Grafikkarte */
+	public int gibZeichenaufrufe() {
+		return drawCalls;
+	}
+
+	/** @return Anzahl der Änderungen am OpenGL-Zustand (Materialien,
+	 * Schalter, Texturen usw.)
+	 */
+	public int gibZustandswechsel() {
+		return stateChanges;
+	}
+
+	/** Die Anzahl der Dreiecke und Eckpunkte ist nur für Objekte bekannt,
+	 * die als Vertex Buffer Object gezeichnet werden
+	 * (<code>DEFAULT_OBJECT_RENDER_MODE=VBOGL</code>), sowie für Himmel
+	 * und Boden.
+	 * @return Anzahl der gezeichneten Dreiecke
+	 */
+	public int gibDreiecke() {
+		return triangles;
+	}
+
+	/** @return Anzahl der gezeichneten Eckpunkte, siehe {@link #gibDreiecke()} */
+	public int gibEckpunkte() {
+		return vertices;
+	}
+
+	/** @return Anzahl der gezeichneten Objekte */
+	public int gibGezeichneteObjekte() {
+		return drawnObjects;
+	}
+
+	/** @return Anzahl der Objekte, die außerhalb des Sichtbereichs lagen
+	 * und deshalb nicht gezeichnet wurden
+	 */
+	public int gibVerworfeneObjekte() {
+		return culledObjects;
+	}
+
+	/** @return Anzahl der Texturwechsel */
+	public int gibTexturwechsel() {
+		return textureBinds;
+	}
+
+	/** @return Anzahl der neu erzeugten Display-Listen */
+	public int gibNeueDisplayListen() {
+		return builtDisplayLists;
+	}
+
+	/** @return Anzahl der neu erzeugten Vertex Buffer Objects */
+	public int gibNeueVBOs() {
+		return builtVBOs;
+	}
+
+	/** @return Rechenzeit des Prozessors für das Bild in Millisekunden */
+	public double gibCPUZeit() {
+		return cpuTime;
+	}
+
+	/** @return Median der Rechenzeit des Prozessors in Millisekunden */
+	public double gibCPUZeitMedian() {
+		return cpuTimeP50;
+	}
+
+	/** @return 99%-Quantil der Rechenzeit des Prozessors in Millisekunden */
+	public double gibCPUZeitP99() {
+		return cpuTimeP99;
+	}
+
+	/** Die Zeit wird von der Grafikkarte gemessen und steht erst einige
+	 * Bilder später zur Verfügung; der Wert gehört daher zu einem etwas
+	 * älteren Bild.
+	 * @return Rechenzeit der Grafikkarte in Millisekunden oder -1, falls
+	 * die Grafikkarte keine Zeitmessung unterstützt
+	 */
+	public double gibGPUZeit() {
+		return gpuTime;
+	}
+
+	/** @return Median der Rechenzeit der Grafikkarte in Millisekunden oder -1 */
+	public double gibGPUZeitMedian() {
+		return gpuTimeP50;
+	}
+
+	/** @return 99%-Quantil der Rechenzeit der Grafikkarte in Millisekunden oder -1 */
+	public double gibGPUZeitP99() {
+		return gpuTimeP99;
+	}
+
+	/** @return Zuletzt gemessene Bildwiederholrate */
+	public double gibFPS() {
+		return fps;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(java.util.Locale.ROOT,
+				"Bild %d: %d Zeichenaufrufe, %d Zustandswechsel, %d Dreiecke, %d Eckpunkte, %d gezeichnet, "
+						+ "%d verworfen, %d Texturwechsel, %d Display-Listen, %d VBOs neu, "
+						+ "CPU %.2f ms (p50 %.2f, p99 %.2f), GPU %.2f ms (p50 %.2f, p99 %.2f), %.1f FPS",
+				frame, drawCalls, stateChanges, triangles, vertices, drawnObjects, culledObjects, textureBinds,
+				builtDisplayLists, builtVBOs, cpuTime, cpuTimeP50, cpuTimeP99, gpuTime, gpuTimeP50, gpuTimeP99,
+				fps);
+	}
+}
@@ -20,6 +20,11 @@ public class GLText extends GLBewegbaresObjekt implements IGLColorable {
 	private boolean aAutoRotation = false, aBgr = false, aCenter = false;
 	// matrix for centering the text and auto rotating
 	private Matrix4 autoPositionMatrix = new Matrix4();
+	// scratch space for computeAutoRotation, reused in every frame
+	private final Matrix4 rotationMatrix = new Matrix4();
+	private final float[] v1 = new float[3], v2 = new float[3], v3 = new float[3], t = new float[3];
+	// text extent, updated whenever the display list is regenerated
+	private double aWidth, aHeight;
 	// private Logger log = Logger.getLogger(getClass().getName());
 	private double aFSize, aBorderSize = 3;
 	private static final int MAX_FONT_RENDER_SIZE = 72;
@@ -210,7 +215,13 @@ public class GLText extends GLBewegbaresObjekt implements IGLColorable {
 
 			bufferName = gl.glGenLists(1);
 
+			// the TextRenderer uses vertex arrays of its own
+			associatedRenderer.getStateCache().unbindGeometry();
+			aWidth = gibBreite();
+			aHeight = gibHoehe();
 			renderText(gl);
+			// the TextRenderer binds its own textures
+			associatedRenderer.getStateCache().invalidateTexture();
 			needsRedraw = false;
 		}
 
@@ -219,18 +230,19 @@ public class GLText extends GLBewegbaresObjekt implements IGLColorable {
 		if(aAutoRotation)
 			computeAutoRotation();
 
-		gl.glPolygonMode(GL2.GL_FRONT_AND_BACK, GL2.GL_FILL);
-		gl.glMultMatrixf(transformationMatrix.getMatrix(), 0);
+		gl.glMultMatrixf(renderMatrix, 0);
 		if(aAutoRotation || aCenter)  // don't do any unnecessary work with the identity matrix
 			gl.glMultMatrixf(autoPositionMatrix.getMatrix(), 0);
 
-		if(!aAutoRotation)
-			gl.glDisable(GL2.GL_CULL_FACE);
-
 		gl.glCallList(bufferName);
+		associatedRenderer.getStateCache().countDraw(1, 0, 0);
+	}
 
-		if(!aAutoRotation)
-			gl.glEnable(GL2.GL_CULL_FACE);
+	@Override
+	void applyState(GLStateCache state) {
+		state.polygonMode(GL2.GL_FILL);
+		// text is visible from behind unless it is turned to the camera
+		state.setEnabled(GL2.GL_CULL_FACE, aAutoRotation);
 	}
 
 	@Override
@@ -240,8 +252,8 @@ public class GLText extends GLBewegbaresObjekt implements IGLColorable {
 	}
 
 	private void computeAutoRotation() {
-		Matrix4 rM = new Matrix4();
-		float[] rm = rM.getMatrix();
+		rotationMatrix.loadIdentity();
+		float[] rm = rotationMatrix.getMatrix();
 
 		/*
 		 * do an orthonormal basis transformation: - the vector from the
@@ -259,18 +271,15 @@ public class GLText extends GLBewegbaresObjekt implements IGLColorable {
 		 * (float)(associatedCam.aPos[1]-tM[13]),
 		 * (float)(associatedCam.aPos[2]-tM[14]) };
 		 */
-		float[] v3 = new float[3];
-		VectorUtil.subVec3(v3, associatedCam.aPos, associatedCam.aLookAt);
+		VectorUtil.subVec3(v3, associatedRenderer.getViewEye(), associatedRenderer.getViewLookAt());
 		VectorUtil.normalizeVec3(v3);
 
-		float[] v2 = associatedCam.aUp.clone();
+		System.arraycopy(associatedRenderer.getViewUp(), 0, v2, 0, 3);
 
-		float[] t = new float[3];
 		VectorUtil.scaleVec3(t, v3, VectorUtil.dotVec3(v2, v3));
 		VectorUtil.subVec3(v2, v2, t);
 		VectorUtil.normalizeVec3(v2);
 
-		float[] v1 = new float[3];
 		VectorUtil.crossVec3(v1, v2, v3);
 		VectorUtil.normalizeVec3(v1);
 
@@ -291,8 +300,8 @@ public class GLText extends GLBewegbaresObjekt implements IGLColorable {
 		gl.glNewList(bufferName, GL2.GL_COMPILE);
 
 		if (aBgr) {
-			double w = gibBreite();
-			double h = gibHoehe();
+			double w = aWidth;
+			double h = aHeight;
 			gl.glDisable(GL2.GL_LIGHTING);
 			gl.glColor3f(aDiffuse[0], aDiffuse[1], aDiffuse[2]);
 			gl.glBegin(GL2.GL_QUADS);
@@ -315,8 +324,8 @@ public class GLText extends GLBewegbaresObjekt implements IGLColorable {
 		autoPositionMatrix.loadIdentity();
 		float[] mat = autoPositionMatrix.getMatrix();
 		if(pDoCenter) {
-			mat[12] = -(float)gibBreite()/2;
-			mat[13] = -(float)gibHoehe()/2;
+			mat[12] = -(float)aWidth/2;
+			mat[13] = -(float)aHeight/2;
 		} else {
 			mat[12] = 0;
 			mat[13] = 0;
@@ -3,6 +3,7 @@ package bGLOOP;
 import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.jogamp.opengl.GL2;
 import com.jogamp.opengl.GLException;
@@ -28,7 +29,11 @@ public class GLTextur {
 	// This safes time and space when loading the textures and enables
 	// faster drawing of textured objects
 	static class GLTextureImpl {
+		// textures are created on the user and the GL thread
+		private final static AtomicInteger nextSortId = new AtomicInteger();
 		final static GLTextureImpl NULL_TEXTURE_IMPL = new GLTextureImpl(null);
+		// small id used by the renderer to group objects by texture
+		final int sortId = nextSortId.getAndIncrement();
 		File aTexFile;
 		Texture aTexture;
 		private boolean aReady = false, cannotBeLoaded = false;
@@ -1,16 +1,11 @@
 package bGLOOP;
 
-import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 
-import com.jogamp.common.nio.Buffers;
-import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL2;
 import com.jogamp.opengl.glu.GLU;
 
-import static java.lang.Math.PI;
-import static java.lang.Math.sin;
-import static java.lang.Math.cos;
+import static java.lang.Math.max;
 
 /**
  * Ein Torusmodell.<br>
@@ -20,8 +15,6 @@ import static java.lang.Math.cos;
  */
 public class GLTorus extends TransformableSurfaceObject {
 	private double aRadA, aRadQ;
-	private FloatBuffer fb;
-	private int[] firstOffsets, countOffsets;
 
 	/** Erzeugt einen Torus mit Mittelpunkt <code>M(pMX, pMY, pMZ)</code>,
 	 * äußerem Radius <code>pRadiusA</code> und Querschnittsrradius <code>pRadiusQ</code>.
@@ -77,118 +70,149 @@ public class GLTorus extends TransformableSurfaceObject {
 
 	@Override
 	void generateDisplayList_GL(GL2 gl) {
+		int nx = lodDivisions(conf.xDivision), ny = lodDivisions(conf.yDivision);
 		double lxy, lz;
 
-		float qStrip = (float) (2 * PI / conf.yDivision);
-		float qRound = (float) (2 * PI / conf.xDivision);
+		TrigTable strip = TrigTable.of(ny), round = TrigTable.of(nx);
 
-		gl.glNewList(bufferName, GL2.GL_COMPILE);
 		double ring1X = 1, ring1Y = 0, ring2X, ring2Y;
-		for (int i = 0; i < conf.xDivision; ++i) {
-			ring2X = cos((i + 1) * qRound);
-			ring2Y = sin((i + 1) * qRound);
+		for (int i = 0; i < nx; ++i) {
+			ring2X = round.cos(i + 1);
+			ring2Y = round.sin(i + 1);
 
 			// need to go around one whole turn
 			gl.glBegin(GL2.GL_QUAD_STRIP);
-			for (int j = 0; j <= conf.yDivision; j++) {
-				lxy = cos(j * qStrip);
-				lz = sin(j * qStrip);
+			for (int j = 0; j <= ny; j++) {
+				lxy = strip.cos(j);
+				lz = strip.sin(j);
 
 				gl.glNormal3d(lxy * ring1X, lxy * ring1Y, lz);
-				gl.glTexCoord2d(1f * i / conf.xDivision, 1f * j / conf.yDivision);
+				gl.glTexCoord2d(1f * i / nx, 1f * j / ny);
 				gl.glVertex3d(ring1X * (aRadA + lxy * aRadQ), ring1Y * (aRadA + lxy * aRadQ), lz * aRadQ);
 
 				gl.glNormal3d(lxy * ring2X, lxy * ring2Y, lz);
-				gl.glTexCoord2d(1f * (i + 1) / conf.xDivision, 1f * j / conf.yDivision);
+				gl.glTexCoord2d(1f * (i + 1) / nx, 1f * j / ny);
 				gl.glVertex3d(ring2X * (aRadA + lxy * aRadQ), ring2Y * (aRadA + lxy * aRadQ), lz * aRadQ);
 			}
 			gl.glEnd();
 			ring1X = ring2X;
 			ring1Y = ring2Y;
 		}
-		gl.glEndList();
 	}
 
 	@Override
-	void drawVBO(GL2 gl) {
-		gl.glBindBuffer( GL.GL_ARRAY_BUFFER, bufferName);
-        gl.glEnableClientState( GL2.GL_VERTEX_ARRAY );
-        gl.glEnableClientState( GL2.GL_NORMAL_ARRAY );
-        gl.glEnableClientState( GL2.GL_TEXTURE_COORD_ARRAY);
-        gl.glNormalPointer(GL.GL_FLOAT, 8 * Buffers.SIZEOF_FLOAT, 0 );
-        gl.glTexCoordPointer( 2, GL.GL_FLOAT, 8 * Buffers.SIZEOF_FLOAT, 3 * Buffers.SIZEOF_FLOAT );
-        gl.glVertexPointer(3, GL.GL_FLOAT, 8 * Buffers.SIZEOF_FLOAT, 5 * Buffers.SIZEOF_FLOAT);
-        gl.glMultiDrawArrays(GL2.GL_TRIANGLE_STRIP, firstOffsets, 0, countOffsets, 0, conf.xDivision);
-
-        gl.glDisableClientState( GL2.GL_VERTEX_ARRAY );
-        gl.glDisableClientState( GL2.GL_NORMAL_ARRAY );
-        gl.glDisableClientState( GL2.GL_TEXTURE_COORD_ARRAY);
-
-        // unbind buffer
-		gl.glBindBuffer( GL.GL_ARRAY_BUFFER, 0);
+	Tessellation tessellate() {
+		return tessellateFor(geometryKey());
 	}
 
+	/* Reads the radii and the divisions only from pKey. */
 	@Override
-	void generateVBO(GL2 gl) {
-		int[] t = new int[1];
-		if(fb != null && bufferName != -1) {
-			t[0] = bufferName;
-			gl.glDeleteBuffers(1, t, 0);
-			fb.clear();
-		}
-		gl.glGenBuffers(1, t, 0);
-		bufferName = t[0];
-		firstOffsets = new int[conf.xDivision];
-		countOffsets = new int[conf.xDivision];
-		for(int i=0; i<conf.xDivision; ++i) {
-			firstOffsets[i] = 2 * (conf.yDivision + 1) * i;
-			countOffsets[i] = 2 * (conf.yDivision + 1);
-		}
-		int vertexBufferSize = 16 * conf.xDivision * (conf.yDivision + 1) * Buffers.SIZEOF_FLOAT;
+	Tessellation tessellateFor(GeometryCache.Key pKey) {
+		int nx = (int) pKey.param(2), ny = (int) pKey.param(3);
+		Tessellation t = new Tessellation(vboVertexCount(pKey));
+		fillVBO(t.vertices, pKey);
+		t.setGridIndices(nx, ny, associatedRenderer.getGeometryCache().hasPrimitiveRestart());
+		return t;
+	}
 
-		gl.glBindBuffer(GL.GL_ARRAY_BUFFER, bufferName);
-		gl.glBufferData(GL.GL_ARRAY_BUFFER, vertexBufferSize, null,
-				GL2.GL_STATIC_DRAW);
-		fb = gl.glMapBuffer(GL.GL_ARRAY_BUFFER, GL.GL_WRITE_ONLY).order(ByteOrder.nativeOrder())
-				.asFloatBuffer();
+	/* Number of vertices written by fillVBO. */
+	int vboVertexCount(GeometryCache.Key pKey) {
+		return ((int) pKey.param(2) + 1) * ((int) pKey.param(3) + 1);
+	}
 
-		// ready for drawing (to buffer)
-		float qStrip = (float) (2 * PI / conf.yDivision);
-		float qRound = (float) (2 * PI / conf.xDivision);
-		double lxy, lz;
+	/* Writes the vertices for tessellate, see Geometry for the layout:
+	 * one row per ring around the tube, the first and the last one at the
+	 * same place, but with different texture coordinates.
+	 */
+	void fillVBO(FloatBuffer fb, GeometryCache.Key pKey) {
+		double radA = pKey.param(0), radQ = pKey.param(1);
+		int nx = (int) pKey.param(2), ny = (int) pKey.param(3);
+		TrigTable strip = TrigTable.of(ny), round = TrigTable.of(nx);
+		double lxy, lz, ringX, ringY;
 
-		double ring1X = 1, ring1Y = 0, ring2X, ring2Y;
-		for (int i = 0; i < conf.xDivision; ++i) {
-			ring2X = cos((i + 1) * qRound);
-			ring2Y = sin((i + 1) * qRound);
+		for (int i = 0; i <= nx; ++i) {
+			ringX = round.cos(i);
+			ringY = round.sin(i);
 
 			// need to go around one whole turn
-			for (int j = 0; j <= conf.yDivision; j++) {
-				lxy = Math.cos(j * qStrip);
-				lz  = Math.sin(j * qStrip);
+			for (int j = 0; j <= ny; j++) {
+				lxy = strip.cos(j);
+				lz  = strip.sin(j);
 
-				fb.put((float)(lxy * ring1X));
-				fb.put((float)(lxy * ring1Y));
-				fb.put((float)lz);
-				fb.put((float)(1f * i / conf.xDivision));
-				fb.put((float)(1f * j / conf.yDivision));
-				fb.put((float)(ring1X * (aRadA + lxy * aRadQ)));
-				fb.put((float)(ring1Y * (aRadA + lxy * aRadQ)));
-				fb.put((float)(lz * aRadQ));
-
-				fb.put((float)(lxy * ring2X));
-				fb.put((float)(lxy * ring2Y));
+				fb.put((float)(lxy * ringX));
+				fb.put((float)(lxy * ringY));
 				fb.put((float)lz);
-				fb.put((float)(1f * (i+1) / conf.xDivision));
-				fb.put((float)(1f * j / conf.yDivision));
-				fb.put((float)(ring2X * (aRadA + lxy * aRadQ)));
-				fb.put((float)(ring2Y * (aRadA + lxy * aRadQ)));
-				fb.put((float)(lz * aRadQ));
+				fb.put((float)(1f * i / nx));
+				fb.put((float)(1f * j / ny));
+				fb.put((float)(ringX * (radA + lxy * radQ)));
+				fb.put((float)(ringY * (radA + lxy * radQ)));
+				fb.put((float)(lz * radQ));
+			}
+		}
+	}
+
+	@Override
+	boolean localBounds(float[] pCenter, float[] pExtent) {
+		pCenter[0] = pCenter[1] = pCenter[2] = 0;
+		pExtent[0] = pExtent[1] = (float) (aRadA + aRadQ);
+		pExtent[2] = (float) aRadQ;
+		return true;
+	}
+
+	@Override
+	float localRadius(float[] pExtent) {
+		return (float) (aRadA + aRadQ);
+	}
+
+	@Override
+	float intersectLocalRay(float[] o, float[] d) {
+		int nx = lodDivisions(conf.xDivision), ny = lodDivisions(conf.yDivision), row = 3 * (ny + 1), a, b;
+		float[] v;
+		TrigTable strip = TrigTable.of(ny), round = TrigTable.of(nx);
+		float t = RayIntersection.MISS;
+		double ringX, ringY, lxy;
+
+		if (super.intersectLocalRay(o, d) < 0)
+			return RayIntersection.MISS;
+		// test against the same quads that generateDisplayList_GL draws
+		v = new float[row * (nx + 1)];
+		for (int i = 0, k = 0; i <= nx; ++i) {
+			ringX = round.cos(i);
+			ringY = round.sin(i);
+			for (int j = 0; j <= ny; ++j) {
+				lxy = strip.cos(j);
+				v[k++] = (float) (ringX * (aRadA + lxy * aRadQ));
+				v[k++] = (float) (ringY * (aRadA + lxy * aRadQ));
+				v[k++] = (float) (strip.sin(j) * aRadQ);
 			}
-			ring1X = ring2X;
-			ring1Y = ring2Y;
 		}
-		gl.glUnmapBuffer(GL.GL_ARRAY_BUFFER);
-		needsRedraw = false;
+		for (int i = 0; i < nx; ++i)
+			for (int j = 0; j < ny; ++j) {
+				a = i * row + 3 * j;
+				b = a + row;
+				t = RayIntersection.nearer(t, RayIntersection.triangle(o, d, v, a, b, a + 3));
+				t = RayIntersection.nearer(t, RayIntersection.triangle(o, d, v, b, b + 3, a + 3));
+			}
+		return t;
+	}
+
+	@Override
+	boolean hasLevelsOfDetail() {
+		return true;
+	}
+
+	/* The outer equator is the largest circle around the axis, the tube
+	 * is the circle around the ring.
+	 */
+	@Override
+	double lodError(int pLevel) {
+		return max(chordError(aRadA + aRadQ, lodDivisions(conf.xDivision, pLevel)),
+				chordError(aRadQ, lodDivisions(conf.yDivision, pLevel)));
+	}
+
+	@Override
+	GeometryCache.Key geometryKey() {
+		return new GeometryCache.Key(GLTorus.class, conf.objectRenderMode, aRadA, aRadQ, lodDivisions(conf.xDivision),
+				lodDivisions(conf.yDivision));
 	}
 }
\ No newline at end of file
@@ -0,0 +1,130 @@
+package bGLOOP;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.jogamp.common.nio.Buffers;
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL2;
+
+/* The GPU side of a surface object: either a display list or a VBO with
+ * interleaved normal (3), texture coordinate (2) and vertex (3) floats.
+ * A VBO is either drawn as a number of triangle strips followed by
+ * triangle fans, or, for shapes whose vertices form a regular grid, with
+ * an index buffer and a single glDrawElements. Meshes use an index buffer
+ * of triangles, made up of one range per material (see drawRange). The
+ * vertices are computed as a Tessellation, possibly on a worker thread,
+ * and uploaded here.
+ *
+ * Geometries are shared between objects of identical shape through the
+ * GeometryCache and are only touched on the GL thread.
+ */
+final class Geometry {
+	final static int FLOATS_PER_VERTEX = 8;
+	// every renderer creates geometries on its own GL thread
+	private final static AtomicInteger nextSortId = new AtomicInteger(1);
+
+	// null for geometries which must not be shared
+	final GeometryCache.Key key;
+	// small id used by the renderer to draw equal geometries consecutively
+	final int sortId = nextSortId.getAndIncrement();
+	int refCount = 0;
+	int bufferName = -1;
+	boolean displayList;
+	int[] firstOffsets, countOffsets;
+	int stripCount;
+	// size of a VBO geometry; unknown (0) for display lists
+	int vertices = 0, triangles = 0;
+	// index buffer of a grid or mesh geometry, -1 if the ranges above are
+	// drawn; the ranges then select parts of the index buffer
+	int indexName = -1, indexMode, indexCount, indexType, restartIndex;
+	boolean primitiveRestart;
+
+	Geometry(GeometryCache.Key pKey) {
+		key = pKey;
+	}
+
+	/* Create the buffer objects from a tessellation, on the GL thread. */
+	void upload(GL2 gl, Tessellation t) {
+		int[] names = new int[t.indices == null ? 1 : 2];
+		gl.glGenBuffers(names.length, names, 0);
+		bufferName = names[0];
+		displayList = false;
+		gl.glBindBuffer(GL.GL_ARRAY_BUFFER, bufferName);
+		t.vertices.rewind();
+		gl.glBufferData(GL.GL_ARRAY_BUFFER, t.vertexBytes(), t.vertices, GL2.GL_STATIC_DRAW);
+		gl.glBindBuffer(GL.GL_ARRAY_BUFFER, 0);
+
+		firstOffsets = t.firstOffsets;
+		countOffsets = t.countOffsets;
+		stripCount = t.stripCount;
+		vertices = t.vertexCount;
+		triangles = t.triangles;
+		if (t.indices == null)
+			return;
+		indexName = names[1];
+		indexMode = t.indexMode;
+		indexCount = t.indexCount;
+		indexType = t.indexType;
+		restartIndex = t.restartIndex;
+		primitiveRestart = t.primitiveRestart;
+		gl.glBindBuffer(GL.GL_ELEMENT_ARRAY_BUFFER, indexName);
+		t.indices.rewind();
+		gl.glBufferData(GL.GL_ELEMENT_ARRAY_BUFFER, t.indexBytes(), t.indices, GL2.GL_STATIC_DRAW);
+		gl.glBindBuffer(GL.GL_ELEMENT_ARRAY_BUFFER, 0);
+	}
+
+	/* Draw one instance. VBOs stay bound in the state cache, so a batch of
+	 * objects sharing this geometry only binds it once.
+	 */
+	void draw(GL2 gl, GLStateCache state) {
+		if (displayList) {
+			gl.glCallList(bufferName);
+			state.countDraw(1, 0, 0);
+			return;
+		}
+		state.bindGeometry(this);
+		if (indexName != -1) {
+			state.countDraw(1, triangles, vertices);
+			gl.glDrawElements(indexMode, indexCount, indexType, 0);
+			return;
+		}
+		state.countDraw((stripCount > 0 ? 1 : 0) + (firstOffsets.length > stripCount ? 1 : 0), triangles, vertices);
+		if (stripCount > 0)
+			gl.glMultiDrawArrays(GL2.GL_TRIANGLE_STRIP, firstOffsets, 0, countOffsets, 0, stripCount);
+		if (firstOffsets.length > stripCount)
+			gl.glMultiDrawArrays(GL2.GL_TRIANGLE_FAN, firstOffsets, stripCount, countOffsets, stripCount,
+					firstOffsets.length - stripCount);
+	}
+
+	/* Draw only the triangles of range pRange of a mesh, see
+	 * Tessellation.setTriangleIndices. The vertices are counted with the
+	 * first range.
+	 */
+	void drawRange(GL2 gl, GLStateCache state, int pRange) {
+		state.bindGeometry(this);
+		state.countDraw(1, countOffsets[pRange] / 3, pRange == 0 ? vertices : 0);
+		gl.glDrawElements(indexMode, countOffsets[pRange], indexType,
+				(long) firstOffsets[pRange] * Tessellation.indexSize(indexType));
+	}
+
+	void bind(GL2 gl) {
+		gl.glBindBuffer(GL.GL_ARRAY_BUFFER, bufferName);
+		gl.glNormalPointer(GL.GL_FLOAT, FLOATS_PER_VERTEX * Buffers.SIZEOF_FLOAT, 0);
+		gl.glTexCoordPointer(2, GL.GL_FLOAT, FLOATS_PER_VERTEX * Buffers.SIZEOF_FLOAT, 3 * Buffers.SIZEOF_FLOAT);
+		gl.glVertexPointer(3, GL.GL_FLOAT, FLOATS_PER_VERTEX * Buffers.SIZEOF_FLOAT, 5 * Buffers.SIZEOF_FLOAT);
+		if (indexName != -1)
+			gl.glBindBuffer(GL.GL_ELEMENT_ARRAY_BUFFER, indexName);
+	}
+
+	void delete(GL2 gl) {
+		if (bufferName == -1)
+			return;
+		if (displayList)
+			gl.glDeleteLists(bufferName, 1);
+		else
+			gl.glDeleteBuffers(1, new int[] { bufferName }, 0);
+		if (indexName != -1)
+			gl.glDeleteBuffers(1, new int[] { indexName }, 0);
+		bufferName = indexName = -1;
+	}
+}
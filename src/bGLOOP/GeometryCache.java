@@ -0,0 +1,248 @@
+package bGLOOP;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jogamp.opengl.GL2;
+
+import bGLOOP.GLObjekt.Rendermodus;
+
+/* Reference counted cache of display lists and VBOs. Objects with the
+ * same primitive type, shape parameters, subdivision and render mode
+ * share one geometry, e.g. the 60 equally sized asteroids of a game only
+ * need one sphere on the GPU.
+ *
+ * VBO geometries are tessellated on the ForkJoin common pool (see
+ * acquireTessellated), so changing the quality of many objects does not
+ * stall a frame. The GL thread only uploads finished tessellations, at
+ * most uploadBudget bytes per frame; objects keep their old geometry
+ * until the new one is uploaded.
+ *
+ * All methods except releaseLater and hasPrimitiveRestart must be called
+ * on the GL thread.
+ */
+final class GeometryCache {
+	/* Frames a tessellation is kept without being asked for, so objects
+	 * that are culled or hidden for a moment do not start it again.
+	 */
+	private final static int PENDING_FRAMES = 60;
+
+	/* Identifies a geometry. The shape parameters are whatever the
+	 * tessellation of the primitive depends on.
+	 */
+	static final class Key {
+		private final Class<?> type;
+		private final Rendermodus mode;
+		private final double[] params;
+		private final int hash;
+
+		Key(Class<?> pType, Rendermodus pMode, double... pParams) {
+			type = pType;
+			mode = pMode;
+			params = pParams;
+			hash = 31 * (31 * type.hashCode() + mode.hashCode()) + Arrays.hashCode(params);
+		}
+
+		/* The shape parameters, in the order the object passed them. */
+		double param(int pIndex) {
+			return params[pIndex];
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return hash == k.hash && type == k.type && mode == k.mode && Arrays.equals(params, k.params);
+		}
+	}
+
+	/* A tessellation running on the pool, shared by all objects waiting
+	 * for the same key.
+	 */
+	private static final class Pending {
+		final CompletableFuture<Tessellation> result;
+		long lastRequest;
+
+		Pending(CompletableFuture<Tessellation> pResult) {
+			result = pResult;
+		}
+	}
+
+	private Logger log = Logger.getLogger("bGLOOP");
+	private final HashMap<Key, Geometry> geometries = new HashMap<Key, Geometry>();
+	private final HashMap<Key, Pending> pending = new HashMap<Key, Pending>();
+	// geometries without a key, only needed to delete them in dispose
+	private final HashSet<Geometry> unshared = new HashSet<Geometry>();
+	private long frame = 0, uploadedBytes = 0, uploadBudget = Long.MAX_VALUE;
+	private volatile boolean primitiveRestart = false;
+	private final ConcurrentLinkedQueue<Geometry> pendingReleases = new ConcurrentLinkedQueue<Geometry>();
+	private long builtDisplayLists = 0, builtVBOs = 0;
+
+	/* Returns the cached geometry for pKey and takes a reference, or null
+	 * if it has to be generated.
+	 */
+	Geometry acquire(Key pKey) {
+		if (pKey == null)
+			return null;
+		Geometry g = geometries.get(pKey);
+		if (g != null)
+			g.refCount++;
+		return g;
+	}
+
+	/* Returns the geometry for pKey with a reference once pObject's
+	 * tessellation for it has been computed and uploaded, and null as long
+	 * as that has not happened yet. The first call starts the tessellation
+	 * on the pool; when it is done, the object schedules a new frame. An
+	 * upload that would exceed the budget of this frame is postponed to the
+	 * next one, but at least one upload per frame always happens.
+	 */
+	Geometry acquireTessellated(GL2 gl, TransformableSurfaceObject pObject, Key pKey) {
+		Pending p = pending.get(pKey);
+		if (p == null) {
+			p = new Pending(CompletableFuture.supplyAsync(() -> pObject.tessellateFor(pKey), ForkJoinPool.commonPool()));
+			p.result.whenComplete((t, e) -> pObject.scheduleRender());
+			pending.put(pKey, p);
+		}
+		p.lastRequest = frame;
+		if (!p.result.isDone())
+			return null;
+
+		Tessellation t;
+		try {
+			t = p.result.join();
+		} catch (CompletionException e) {
+			pending.remove(pKey);
+			// fail on the GL thread, as a synchronous tessellation would
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw e;
+		}
+		if (uploadedBytes > 0 && uploadedBytes + t.bytes() > uploadBudget) {
+			pObject.scheduleRender();
+			return null;
+		}
+		pending.remove(pKey);
+		uploadedBytes += t.bytes();
+		// uploading changes the buffer bindings
+		pObject.associatedRenderer.getStateCache().unbindGeometry();
+		Geometry g = new Geometry(pKey);
+		g.upload(gl, t);
+		register(g);
+		return g;
+	}
+
+	/* Called at the start of every frame. Tessellations no object has
+	 * asked for in the last PENDING_FRAMES frames are dropped; their
+	 * objects have most likely been deleted or changed their shape again.
+	 */
+	void beginFrame() {
+		frame++;
+		uploadedBytes = 0;
+		for (Iterator<Pending> i = pending.values().iterator(); i.hasNext();) {
+			Pending p = i.next();
+			if (p.lastRequest < frame - PENDING_FRAMES) {
+				p.result.cancel(false);
+				i.remove();
+			}
+		}
+	}
+
+	void setUploadBudget(long pBytes) {
+		uploadBudget = pBytes > 0 ? pBytes : Long.MAX_VALUE;
+	}
+
+	void setPrimitiveRestart(boolean pAvailable) {
+		primitiveRestart = pAvailable;
+	}
+
+	/* Whether the GL supports primitive restart, see
+	 * Tessellation.setGridIndices. Known once the GL is initialized.
+	 */
+	boolean hasPrimitiveRestart() {
+		return primitiveRestart;
+	}
+
+	/* Adds a freshly generated geometry with one reference. */
+	void register(Geometry g) {
+		if (g.displayList)
+			builtDisplayLists++;
+		else
+			builtVBOs++;
+		g.refCount = 1;
+		if (g.key != null)
+			geometries.put(g.key, g);
+		else
+			unshared.add(g);
+	}
+
+	void release(GL2 gl, Geometry g) {
+		if (--g.refCount > 0)
+			return;
+		if (g.key != null)
+			geometries.remove(g.key);
+		else
+			unshared.remove(g);
+		g.delete(gl);
+		if (log.isLoggable(Level.FINE))
+			log.fine("geometry deleted, " + geometries.size() + " cached");
+	}
+
+	/* For objects deleted by the user thread, the geometry is released at
+	 * the beginning of the next frame.
+	 */
+	void releaseLater(Geometry g) {
+		pendingReleases.add(g);
+	}
+
+	void processReleases(GL2 gl) {
+		Geometry g;
+		while ((g = pendingReleases.poll()) != null)
+			release(gl, g);
+	}
+
+	/* Deletes every geometry and drops the running tessellations, when the
+	 * GL context goes away.
+	 */
+	void dispose(GL2 gl) {
+		processReleases(gl);
+		for (Geometry g : geometries.values())
+			g.delete(gl);
+		for (Geometry g : unshared)
+			g.delete(gl);
+		for (Pending p : pending.values())
+			p.result.cancel(false);
+		if (log.isLoggable(Level.FINE))
+			log.fine((geometries.size() + unshared.size()) + " geometries deleted, " + pending.size()
+					+ " tessellations dropped");
+		geometries.clear();
+		unshared.clear();
+		pending.clear();
+	}
+
+	int size() {
+		return geometries.size();
+	}
+
+	long getBuiltDisplayLists() {
+		return builtDisplayLists;
+	}
+
+	long getBuiltVBOs() {
+		return builtVBOs;
+	}
+}
@@ -10,7 +10,14 @@ interface IGLSubdivisable {
 	 * desto feiner sind die Schattierungen auf der Oberfläche. Allerdings führt
 	 * eine hohe Zahl von Polygonen in einer Szene zu langsamerer Darstellung
 	 * und fallender Framerate.
-	 * 
+	 * <p>
+	 * Kugeln, Tori, Kegel und Zylinder werden mit der hier eingestellten
+	 * Qualität nur gezeichnet, wenn sie nahe genug an der Kamera sind. Weiter
+	 * entfernte Objekte werden gröber unterteilt, solange der Unterschied auf
+	 * dem Bildschirm höchstens <code>LOD_MAX_PIXEL_ERROR</code> Pixel beträgt
+	 * (siehe <code>LEVEL_OF_DETAIL</code> in der Datei <code>.bgloop</code>).
+	 * </p>
+	 *
 	 * @param pBreitengrade Anzahl der Unteilungen horizontalen Scheiben
 	 * @param pLaengengrade Anzahl der Unteilungen vertikalen Scheiben
 	 */
@@ -0,0 +1,393 @@
+package bGLOOP;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.jogamp.opengl.math.FloatUtil;
+import com.jogamp.opengl.math.geom.AABBox;
+import com.jogamp.opengl.math.geom.Frustum;
+
+/* Loose octree over the world bounds of the objects of one renderer. A
+ * node with center c and half size h holds objects whose bounding sphere
+ * has its center in the node's cell c +- h and a radius of at most h, so
+ * the loose box c +- 2h of the node contains all of them. Every object is
+ * stored in the deepest node that satisfies this.
+ *
+ * The tree holds the objects as they are drawn: the render snapshot of a
+ * changed object queues it (see markDirty), and the GL thread processes
+ * the queue at the start of every frame, right after the snapshots. An
+ * object that was moved several times in between is updated once, and an
+ * object that stays inside its node is not relinked at all. Queries see
+ * the scene of the last frame.
+ *
+ * Objects without bounds (see GLBewegbaresObjekt.localBounds) are not
+ * part of the tree. Objects too far away for the largest root are kept
+ * in a separate node and tested one by one.
+ *
+ * Everything except markDirty synchronizes on the octree, it is used by
+ * the GL thread for culling and by user threads for queries. User threads
+ * call add and remove while they hold the object's lock, so the octree
+ * must never lock an object: it only works with the bounds and matrix
+ * the GL thread has copied from the snapshot.
+ */
+final class LooseOctree {
+	private final static int MAX_DEPTH = 10;
+	private final static float INITIAL_HALF_SIZE = 1024, MAX_HALF_SIZE = 1 << 20;
+	// radius of the sphere around a node's loose box, relative to half
+	private final static float LOOSE_RADIUS = (float) (2 * Math.sqrt(3));
+	private final static GLBewegbaresObjekt[] NO_OBJECTS = {};
+
+	static final class Node {
+		final Node parent;
+		final int octant, depth;
+		final float cx, cy, cz, half;
+		final AABBox looseBox;
+		final Node[] children = new Node[8];
+		GLBewegbaresObjekt[] objects = NO_OBJECTS;
+		int objectCount = 0, subtreeCount = 0;
+
+		Node(Node pParent, int pOctant, float pX, float pY, float pZ, float pHalf) {
+			parent = pParent;
+			octant = pOctant;
+			depth = pParent == null ? 0 : pParent.depth + 1;
+			cx = pX;
+			cy = pY;
+			cz = pZ;
+			half = pHalf;
+			looseBox = new AABBox(cx - 2 * half, cy - 2 * half, cz - 2 * half, cx + 2 * half, cy + 2 * half,
+					cz + 2 * half);
+		}
+
+		Node child(int pOctant) {
+			Node c = children[pOctant];
+			if (c == null) {
+				float q = half / 2;
+				c = children[pOctant] = new Node(this, pOctant, (pOctant & 1) != 0 ? cx + q : cx - q,
+						(pOctant & 2) != 0 ? cy + q : cy - q, (pOctant & 4) != 0 ? cz + q : cz - q, q);
+			}
+			return c;
+		}
+
+		boolean contains(float[] pCenter, float pRadius) {
+			return pRadius <= half && Math.abs(pCenter[0] - cx) <= half && Math.abs(pCenter[1] - cy) <= half
+					&& Math.abs(pCenter[2] - cz) <= half;
+		}
+
+		int octantOf(float[] pCenter) {
+			return (pCenter[0] >= cx ? 1 : 0) | (pCenter[1] >= cy ? 2 : 0) | (pCenter[2] >= cz ? 4 : 0);
+		}
+
+		// distance between a point and the loose box, 0 if inside
+		float distance(float pX, float pY, float pZ) {
+			float dx = Math.max(Math.abs(pX - cx) - 2 * half, 0), dy = Math.max(Math.abs(pY - cy) - 2 * half, 0),
+					dz = Math.max(Math.abs(pZ - cz) - 2 * half, 0);
+			return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+		}
+	}
+
+	private final ConcurrentLinkedQueue<GLBewegbaresObjekt> dirty = new ConcurrentLinkedQueue<GLBewegbaresObjekt>();
+	private Node root = new Node(null, 0, 0, 0, 0, INITIAL_HALF_SIZE);
+	private final Node farNode = new Node(null, 0, 0, 0, 0, Float.POSITIVE_INFINITY);
+	private final float[] nodeCenter = new float[3];
+	private GLBewegbaresObjekt nearest;
+	private float nearestDistance;
+	// scratch space of pick
+	private final float[] inverse = new float[16], localOrigin = new float[4], localDir = new float[4],
+			worldVec = new float[4];
+
+	/* Called from any thread whenever the bounds of pObj have changed. */
+	void markDirty(GLBewegbaresObjekt pObj) {
+		if (!pObj.indexQueued && !pObj.indexRemoved) {
+			pObj.indexQueued = true;
+			dirty.add(pObj);
+		}
+	}
+
+	/* Takes an object back in after remove; it is inserted by the next
+	 * update.
+	 */
+	synchronized void add(GLBewegbaresObjekt pObj) {
+		pObj.indexRemoved = false;
+		markDirty(pObj);
+	}
+
+	synchronized void remove(GLBewegbaresObjekt pObj) {
+		pObj.indexRemoved = true;
+		unlink(pObj);
+	}
+
+	/* Called on the GL thread after the render snapshots are taken. */
+	synchronized void update() {
+		GLBewegbaresObjekt obj;
+		Node n;
+
+		while ((obj = dirty.poll()) != null) {
+			// clear the flag first, changes from now on queue it again
+			obj.indexQueued = false;
+			if (obj.indexRemoved)
+				continue;
+			if (!obj.updateBounds()) {
+				unlink(obj);
+				continue;
+			}
+			n = obj.indexNode;
+			if (n != null && n != farNode && n.contains(obj.boundsCenter, obj.boundsRadius)
+					&& (obj.boundsRadius > n.half / 2 || n.depth == MAX_DEPTH))
+				continue;
+			unlink(obj);
+			insert(obj);
+		}
+	}
+
+	/* Set visibleStamp of every object that is not completely outside of
+	 * pFrustum to pStamp. Subtrees outside of the frustum are skipped,
+	 * subtrees inside are accepted without testing their objects.
+	 */
+	synchronized void cull(Frustum pFrustum, int pStamp) {
+		cullNode(root, pFrustum, pStamp, false);
+		cullObjects(farNode, pFrustum, pStamp, false);
+	}
+
+	/* All objects whose bounding sphere intersects the given sphere. */
+	synchronized void collectInRadius(float pX, float pY, float pZ, float pRadius, List<GLObjekt> pResult) {
+		collectNode(root, pX, pY, pZ, pRadius, pResult);
+		collectObjects(farNode, pX, pY, pZ, pRadius, pResult);
+	}
+
+	/* Object with the smallest distance between the given point and its
+	 * bounding sphere, or null if the octree is empty.
+	 */
+	synchronized GLBewegbaresObjekt findNearest(float pX, float pY, float pZ) {
+		GLBewegbaresObjekt r;
+
+		nearest = null;
+		nearestDistance = Float.POSITIVE_INFINITY;
+		nearestObjects(farNode, pX, pY, pZ);
+		nearestNode(root, pX, pY, pZ);
+		r = nearest;
+		nearest = null;
+		return r;
+	}
+
+	/* The visible object with the first hit of the ray pOrigin + t*pDir,
+	 * t >= 0, or null. Nodes and objects behind the best hit so far are
+	 * skipped; the remaining objects are tested exactly in their own
+	 * coordinates.
+	 */
+	synchronized GLBewegbaresObjekt pick(float[] pOrigin, float[] pDir) {
+		GLBewegbaresObjekt r;
+
+		nearest = null;
+		nearestDistance = Float.POSITIVE_INFINITY;
+		pickObjects(farNode, pOrigin, pDir);
+		pickNode(root, pOrigin, pDir);
+		r = nearest;
+		nearest = null;
+		return r;
+	}
+
+	synchronized int size() {
+		return root.subtreeCount + farNode.objectCount;
+	}
+
+	private void insert(GLBewegbaresObjekt pObj) {
+		float[] c = pObj.boundsCenter;
+		float r = pObj.boundsRadius;
+		Node n;
+
+		while (!root.contains(c, r)) {
+			if (root.half >= MAX_HALF_SIZE || Float.isNaN(r + c[0] + c[1] + c[2])) {
+				link(farNode, pObj);
+				return;
+			}
+			grow();
+		}
+		for (n = root; n.depth < MAX_DEPTH && r <= n.half / 2;)
+			n = n.child(n.octantOf(c));
+		link(n, pObj);
+	}
+
+	/* Double the size of the root and insert everything again. This only
+	 * happens a few times while the scene spreads out.
+	 */
+	private void grow() {
+		ArrayList<GLBewegbaresObjekt> all = new ArrayList<GLBewegbaresObjekt>(root.subtreeCount);
+		collectAll(root, all);
+		root = new Node(null, 0, 0, 0, 0, 2 * root.half);
+		for (GLBewegbaresObjekt obj : all) {
+			obj.indexNode = null;
+			insert(obj);
+		}
+	}
+
+	private static void collectAll(Node n, List<GLBewegbaresObjekt> pResult) {
+		for (int i = 0; i < n.objectCount; ++i)
+			pResult.add(n.objects[i]);
+		for (Node c : n.children)
+			if (c != null)
+				collectAll(c, pResult);
+	}
+
+	private static void link(Node n, GLBewegbaresObjekt pObj) {
+		if (n.objectCount == n.objects.length)
+			n.objects = Arrays.copyOf(n.objects, Math.max(4, 2 * n.objectCount));
+		n.objects[pObj.indexSlot = n.objectCount++] = pObj;
+		pObj.indexNode = n;
+		for (; n != null; n = n.parent)
+			n.subtreeCount++;
+	}
+
+	private void unlink(GLBewegbaresObjekt pObj) {
+		Node n = pObj.indexNode;
+		GLBewegbaresObjekt last;
+
+		if (n == null)
+			return;
+		// move the last object into the free slot
+		last = n.objects[--n.objectCount];
+		n.objects[last.indexSlot = pObj.indexSlot] = last;
+		n.objects[n.objectCount] = null;
+		pObj.indexNode = null;
+		for (Node p = n; p != null; p = p.parent)
+			p.subtreeCount--;
+		// drop empty branches
+		while (n.parent != null && n.subtreeCount == 0) {
+			n.parent.children[n.octant] = null;
+			n = n.parent;
+		}
+	}
+
+	private void cullNode(Node n, Frustum pFrustum, int pStamp, boolean pInside) {
+		if (!pInside) {
+			nodeCenter[0] = n.cx;
+			nodeCenter[1] = n.cy;
+			nodeCenter[2] = n.cz;
+			switch (pFrustum.classifySphere(nodeCenter, n.half * LOOSE_RADIUS)) {
+			case OUTSIDE:
+				return;
+			case INSIDE:
+				pInside = true;
+				break;
+			default:
+				if (pFrustum.isAABBoxOutside(n.looseBox))
+					return;
+			}
+		}
+		cullObjects(n, pFrustum, pStamp, pInside);
+		for (Node c : n.children)
+			if (c != null)
+				cullNode(c, pFrustum, pStamp, pInside);
+	}
+
+	private static void cullObjects(Node n, Frustum pFrustum, int pStamp, boolean pInside) {
+		GLBewegbaresObjekt obj;
+		for (int i = 0; i < n.objectCount; ++i) {
+			obj = n.objects[i];
+			if (pInside || !isOutside(pFrustum, obj))
+				obj.visibleStamp = pStamp;
+		}
+	}
+
+	static boolean isOutside(Frustum pFrustum, GLBewegbaresObjekt pObj) {
+		switch (pFrustum.classifySphere(pObj.boundsCenter, pObj.boundsRadius)) {
+		case OUTSIDE:
+			return true;
+		case INSIDE:
+			return false;
+		default:
+			// the box is tighter for long and flat objects
+			return pFrustum.isAABBoxOutside(pObj.boundsBox);
+		}
+	}
+
+	private static void collectNode(Node n, float pX, float pY, float pZ, float pRadius, List<GLObjekt> pResult) {
+		if (n.distance(pX, pY, pZ) > pRadius)
+			return;
+		collectObjects(n, pX, pY, pZ, pRadius, pResult);
+		for (Node c : n.children)
+			if (c != null)
+				collectNode(c, pX, pY, pZ, pRadius, pResult);
+	}
+
+	private static void collectObjects(Node n, float pX, float pY, float pZ, float pRadius, List<GLObjekt> pResult) {
+		GLBewegbaresObjekt obj;
+		for (int i = 0; i < n.objectCount; ++i)
+			if (distance(obj = n.objects[i], pX, pY, pZ) <= pRadius)
+				pResult.add(obj);
+	}
+
+	private void nearestNode(Node n, float pX, float pY, float pZ) {
+		Node c;
+		int first;
+
+		if (n.distance(pX, pY, pZ) >= nearestDistance)
+			return;
+		nearestObjects(n, pX, pY, pZ);
+		// the octant of the point first, it most likely holds the nearest
+		nodeCenter[0] = pX;
+		nodeCenter[1] = pY;
+		nodeCenter[2] = pZ;
+		first = n.octantOf(nodeCenter);
+		for (int i = 0; i < 8; ++i)
+			if ((c = n.children[i ^ first]) != null)
+				nearestNode(c, pX, pY, pZ);
+	}
+
+	private void nearestObjects(Node n, float pX, float pY, float pZ) {
+		GLBewegbaresObjekt obj;
+		float d;
+		for (int i = 0; i < n.objectCount; ++i)
+			if ((d = distance(obj = n.objects[i], pX, pY, pZ)) < nearestDistance) {
+				nearestDistance = d;
+				nearest = obj;
+			}
+	}
+
+	private void pickNode(Node n, float[] pOrigin, float[] pDir) {
+		float t = RayIntersection.box(pOrigin, pDir, n.looseBox.getLow(), n.looseBox.getHigh());
+		if (t < 0 || t >= nearestDistance)
+			return;
+		pickObjects(n, pOrigin, pDir);
+		for (Node c : n.children)
+			if (c != null)
+				pickNode(c, pOrigin, pDir);
+	}
+
+	private void pickObjects(Node n, float[] pOrigin, float[] pDir) {
+		GLBewegbaresObjekt obj;
+		float t;
+
+		for (int i = 0; i < n.objectCount; ++i) {
+			obj = n.objects[i];
+			if (!obj.aVisible)
+				continue;
+			t = RayIntersection.sphere(pOrigin, pDir, obj.boundsCenter[0], obj.boundsCenter[1], obj.boundsCenter[2],
+					obj.boundsRadius);
+			if (t < 0 || t >= nearestDistance)
+				continue;
+
+			// move the ray into object coordinates, this keeps t
+			if (FloatUtil.invertMatrix(obj.boundsMatrix, inverse) == null)
+				continue;
+			System.arraycopy(pOrigin, 0, worldVec, 0, 3);
+			worldVec[3] = 1;
+			FloatUtil.multMatrixVec(inverse, worldVec, localOrigin);
+			System.arraycopy(pDir, 0, worldVec, 0, 3);
+			worldVec[3] = 0;
+			FloatUtil.multMatrixVec(inverse, worldVec, localDir);
+			t = obj.intersectLocalRay(localOrigin, localDir);
+			if (t >= 0 && t < nearestDistance) {
+				nearestDistance = t;
+				nearest = obj;
+			}
+		}
+	}
+
+	// distance between a point and the bounding sphere, 0 if inside
+	private static float distance(GLBewegbaresObjekt pObj, float pX, float pY, float pZ) {
+		float dx = pObj.boundsCenter[0] - pX, dy = pObj.boundsCenter[1] - pY, dz = pObj.boundsCenter[2] - pZ;
+		return Math.max((float) Math.sqrt(dx * dx + dy * dy + dz * dz) - pObj.boundsRadius, 0);
+	}
+}
@@ -0,0 +1,87 @@
+package bGLOOP;
+
+/* Intersection tests of a ray o + t*d with simple shapes. All methods
+ * return the smallest t >= 0 at which the ray hits the shape, or MISS.
+ * The direction does not need to be normalized, so a ray can be moved
+ * into object coordinates by an affine transformation without changing
+ * the parameter of its hits.
+ */
+final class RayIntersection {
+	final static float MISS = -1;
+	private final static float EPSILON = 1e-7f;
+
+	private RayIntersection() {
+	}
+
+	/* Axis aligned box from pLow to pHigh, 0 if the origin lies inside. */
+	static float box(float[] o, float[] d, float[] pLow, float[] pHigh) {
+		float tNear = 0, tFar = Float.POSITIVE_INFINITY, t1, t2;
+
+		for (int i = 0; i < 3; ++i)
+			if (d[i] == 0) {
+				if (o[i] < pLow[i] || o[i] > pHigh[i])
+					return MISS;
+			} else {
+				t1 = (pLow[i] - o[i]) / d[i];
+				t2 = (pHigh[i] - o[i]) / d[i];
+				tNear = Math.max(tNear, Math.min(t1, t2));
+				tFar = Math.min(tFar, Math.max(t1, t2));
+				if (tNear > tFar)
+					return MISS;
+			}
+		return tNear;
+	}
+
+	/* Sphere around (pX|pY|pZ), 0 if the origin lies inside. */
+	static float sphere(float[] o, float[] d, float pX, float pY, float pZ, float pRadius) {
+		float ox = o[0] - pX, oy = o[1] - pY, oz = o[2] - pZ;
+		float a = d[0] * d[0] + d[1] * d[1] + d[2] * d[2], b = ox * d[0] + oy * d[1] + oz * d[2],
+				c = ox * ox + oy * oy + oz * oz - pRadius * pRadius, disc, t;
+
+		if (c <= 0)
+			return 0;
+		disc = b * b - a * c;
+		if (disc < 0 || a == 0)
+			return MISS;
+		t = (-b - (float) Math.sqrt(disc)) / a;
+		return t < 0 ? MISS : t;
+	}
+
+	/* Triangle with the corners at offsets pA, pB and pC of the xyz array
+	 * pVertices, hit from either side (Möller-Trumbore).
+	 */
+	static float triangle(float[] o, float[] d, float[] pVertices, int pA, int pB, int pC) {
+		float[] v = pVertices;
+		float e1x = v[pB] - v[pA], e1y = v[pB + 1] - v[pA + 1], e1z = v[pB + 2] - v[pA + 2];
+		float e2x = v[pC] - v[pA], e2y = v[pC + 1] - v[pA + 1], e2z = v[pC + 2] - v[pA + 2];
+		float px = d[1] * e2z - d[2] * e2y, py = d[2] * e2x - d[0] * e2z, pz = d[0] * e2y - d[1] * e2x;
+		float det = e1x * px + e1y * py + e1z * pz, inv, sx, sy, sz, qx, qy, qz, u, w, t;
+
+		if (Math.abs(det) < EPSILON)
+			return MISS;
+		inv = 1 / det;
+		sx = o[0] - v[pA];
+		sy = o[1] - v[pA + 1];
+		sz = o[2] - v[pA + 2];
+		u = (sx * px + sy * py + sz * pz) * inv;
+		if (u < 0 || u > 1)
+			return MISS;
+		qx = sy * e1z - sz * e1y;
+		qy = sz * e1x - sx * e1z;
+		qz = sx * e1y - sy * e1x;
+		w = (d[0] * qx + d[1] * qy + d[2] * qz) * inv;
+		if (w < 0 || u + w > 1)
+			return MISS;
+		t = (e2x * qx + e2y * qy + e2z * qz) * inv;
+		return t < 0 ? MISS : t;
+	}
+
+	/* Smaller of two results, ignoring misses. */
+	static float nearer(float t1, float t2) {
+		if (t1 < 0)
+			return t2;
+		if (t2 < 0)
+			return t1;
+		return Math.min(t1, t2);
+	}
+}
@@ -0,0 +1,302 @@
+package bGLOOP;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import javax.imageio.ImageIO;
+
+import com.jogamp.opengl.GL2;
+
+/* Takes screenshots without stalling the render thread. The frame is
+ * read into a pixel buffer object, which the GPU fills asynchronously;
+ * the buffer is mapped at the start of the next frame, copied and handed
+ * to a small pool of encoder threads, which build the BufferedImage and
+ * write the file. Without PBO support the pixels are read directly, but
+ * encoding still happens in the background.
+ *
+ * All requests pending at the end of a frame share one readback.
+ * request, nextFileName and shutdown may be called on any thread,
+ * everything else on the GL thread.
+ */
+final class ScreenshotPipeline {
+	private final static int BUFFERS = 2;
+	// pixel buffers of captured frames waiting for a free encoder; when
+	// exceeded, the render thread encodes itself, which bounds the memory
+	// held by the queue
+	private final static int MAX_QUEUED_IMAGES = 8;
+	// seconds shutdown waits for the encoders
+	private final static int SHUTDOWN_TIMEOUT = 30;
+
+	private final static class Request {
+		final File file;
+		final CompletableFuture<BufferedImage> result;
+
+		Request(File pFile, CompletableFuture<BufferedImage> pResult) {
+			file = pFile;
+			result = pResult;
+		}
+	}
+
+	/* One pixel buffer object with the requests whose readback it holds. */
+	private final static class Slot {
+		int pbo = 0, capacity = 0, width, height;
+		ArrayList<Request> requests;
+	}
+
+	private Logger log = Logger.getLogger("bGLOOP");
+	private final WindowConfig wconf;
+	private final ConcurrentLinkedQueue<Request> pending = new ConcurrentLinkedQueue<Request>();
+	private final Slot[] slots = new Slot[BUFFERS];
+	private int nextSlot = 0, inFlight = 0;
+	private Boolean pboSupported = null;
+	private final ThreadPoolExecutor encoder;
+	// number of the next screenshot without explicit file name, found by
+	// scanning the working directory once
+	private int nextNumber = -1;
+
+	ScreenshotPipeline(WindowConfig pConfig) {
+		wconf = pConfig;
+		for (int i = 0; i < BUFFERS; ++i)
+			slots[i] = new Slot();
+		int threads = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1));
+		encoder = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(MAX_QUEUED_IMAGES), new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "bGLOOP-screenshot");
+						t.setDaemon(true);
+						return t;
+					}
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+		encoder.allowCoreThreadTimeOut(true);
+	}
+
+	/* Queue a screenshot of the next frame. pFile may be null if only the
+	 * image is wanted, pResult may be null if only the file is wanted.
+	 */
+	void request(File pFile, CompletableFuture<BufferedImage> pResult) {
+		pending.add(new Request(pFile, pResult));
+	}
+
+	boolean isIdle() {
+		return pending.isEmpty() && inFlight == 0;
+	}
+
+	/* Finish the readbacks of earlier frames. Called at the start of a
+	 * frame, when the GPU has had a whole frame to fill the buffers.
+	 */
+	void collect(GL2 gl) {
+		if (inFlight == 0)
+			return;
+		for (int i = 0; i < BUFFERS; ++i) {
+			Slot s = slots[(nextSlot + i) % BUFFERS];
+			if (s.requests != null)
+				collect(gl, s);
+		}
+	}
+
+	/* Read the current frame for all pending requests. Called after the
+	 * scene has been rendered and before the buffers are swapped.
+	 */
+	void capture(GL2 gl, int pWidth, int pHeight) {
+		if (pending.isEmpty() || pWidth <= 0 || pHeight <= 0)
+			return;
+		ArrayList<Request> batch = new ArrayList<Request>();
+		Request r;
+		while ((r = pending.poll()) != null)
+			batch.add(r);
+
+		if (pboSupported == null)
+			pboSupported = gl.isExtensionAvailable("GL_ARB_pixel_buffer_object");
+		int size = pWidth * pHeight * 4;
+		if (!pboSupported) {
+			ByteBuffer pixels = ByteBuffer.allocate(size);
+			gl.glReadPixels(0, 0, pWidth, pHeight, GL2.GL_BGRA, GL2.GL_UNSIGNED_BYTE, pixels);
+			encode(pixels, pWidth, pHeight, batch);
+			return;
+		}
+
+		Slot s = slots[nextSlot];
+		if (s.requests != null)
+			collect(gl, s);
+		nextSlot = (nextSlot + 1) % BUFFERS;
+
+		if (s.pbo == 0) {
+			int[] id = new int[1];
+			gl.glGenBuffers(1, id, 0);
+			s.pbo = id[0];
+		}
+		gl.glBindBuffer(GL2.GL_PIXEL_PACK_BUFFER, s.pbo);
+		if (s.capacity < size) {
+			gl.glBufferData(GL2.GL_PIXEL_PACK_BUFFER, size, null, GL2.GL_STREAM_READ);
+			s.capacity = size;
+		}
+		gl.glReadPixels(0, 0, pWidth, pHeight, GL2.GL_BGRA, GL2.GL_UNSIGNED_BYTE, 0);
+		gl.glBindBuffer(GL2.GL_PIXEL_PACK_BUFFER, 0);
+		s.width = pWidth;
+		s.height = pHeight;
+		s.requests = batch;
+		inFlight++;
+	}
+
+	/* Encodes the readbacks still in flight before the buffers go away,
+	 * and waits for the encoders. Requests for a frame that has not been
+	 * drawn fail.
+	 */
+	void dispose(GL2 gl) {
+		collect(gl);
+		for (Slot s : slots)
+			if (s.pbo != 0) {
+				gl.glDeleteBuffers(1, new int[] { s.pbo }, 0);
+				s.pbo = s.capacity = 0;
+			}
+		ArrayList<Request> batch = new ArrayList<Request>();
+		Request r;
+		while ((r = pending.poll()) != null)
+			batch.add(r);
+		if (!batch.isEmpty())
+			fail(batch, new IllegalStateException("window closed before the screenshot was taken"));
+		shutdown();
+	}
+
+	/* Waits until the encoders have written every screenshot handed to
+	 * them, at most SHUTDOWN_TIMEOUT seconds. The encoder threads are
+	 * daemons, without this System.exit would lose the queued images.
+	 * Screenshots taken afterwards are encoded on the GL thread.
+	 */
+	void shutdown() {
+		encoder.shutdown();
+		try {
+			if (!encoder.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS))
+				log.warning("Screenshots are still being written, giving up");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/* File name for a screenshot without explicit name: prefix, a four
+	 * digit number and the configured format.
+	 */
+	synchronized File nextFileName() {
+		if (nextNumber < 0)
+			nextNumber = findNextNumber(wconf.screenshotFormat, wconf.screenshotPrefix);
+		return new File(wconf.screenshotPrefix + "-" + String.format("%04d", nextNumber++) + "."
+				+ wconf.screenshotFormat);
+	}
+
+	private void collect(GL2 gl, Slot s) {
+		ArrayList<Request> batch = s.requests;
+		s.requests = null;
+		inFlight--;
+
+		gl.glBindBuffer(GL2.GL_PIXEL_PACK_BUFFER, s.pbo);
+		ByteBuffer mapped = gl.glMapBuffer(GL2.GL_PIXEL_PACK_BUFFER, GL2.GL_READ_ONLY);
+		if (mapped == null) {
+			gl.glBindBuffer(GL2.GL_PIXEL_PACK_BUFFER, 0);
+			fail(batch, new IllegalStateException("pixel buffer could not be mapped"));
+			return;
+		}
+		// only a plain copy happens on the GL thread
+		ByteBuffer pixels = ByteBuffer.allocate(s.width * s.height * 4);
+		mapped.limit(pixels.capacity());
+		pixels.put(mapped);
+		gl.glUnmapBuffer(GL2.GL_PIXEL_PACK_BUFFER);
+		gl.glBindBuffer(GL2.GL_PIXEL_PACK_BUFFER, 0);
+		encode(pixels, s.width, s.height, batch);
+	}
+
+	private void encode(final ByteBuffer pPixels, final int pWidth, final int pHeight,
+			final ArrayList<Request> pBatch) {
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				BufferedImage bi;
+				try {
+					bi = toImage(pPixels, pWidth, pHeight);
+				} catch (RuntimeException e) {
+					fail(pBatch, e);
+					return;
+				}
+				for (Request r : pBatch) {
+					if (r.file != null)
+						write(bi, r.file);
+					if (r.result != null)
+						r.result.complete(bi);
+				}
+			}
+		};
+		// a shut down executor would silently drop the task
+		if (encoder.isShutdown())
+			task.run();
+		else
+			encoder.execute(task);
+	}
+
+	private void write(BufferedImage bi, File f) {
+		try {
+			ImageIO.write(bi, wconf.screenshotFormat, f);
+			log.info("Screenshot taken and saved to " + f.getCanonicalPath());
+		} catch (IOException e) {
+			log.log(Level.SEVERE, "Screenshot could not be saved to " + f, e);
+		}
+	}
+
+	private static void fail(ArrayList<Request> pBatch, Throwable t) {
+		Logger.getLogger("bGLOOP").log(Level.SEVERE, "Screenshot failed", t);
+		for (Request r : pBatch)
+			if (r.result != null)
+				r.result.completeExceptionally(t);
+	}
+
+	/* BGRA bytes are ARGB ints in little endian order. GL rows start at
+	 * the bottom, image rows at the top.
+	 */
+	static BufferedImage toImage(ByteBuffer pPixels, int pWidth, int pHeight) {
+		BufferedImage bi = new BufferedImage(pWidth, pHeight, BufferedImage.TYPE_INT_RGB);
+		int[] dst = ((DataBufferInt) bi.getRaster().getDataBuffer()).getData();
+		pPixels.rewind();
+		IntBuffer src = pPixels.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+		for (int y = 0; y < pHeight; ++y) {
+			src.position((pHeight - 1 - y) * pWidth);
+			src.get(dst, y * pWidth, pWidth);
+		}
+		return bi;
+	}
+
+	/* get the next free consecutive number to name the next screenshot
+	 */
+	private static int findNextNumber(final String fileFormat, final String filePrefix) {
+		String[] files = new File(".").list(new FilenameFilter() {
+			private Pattern p = Pattern.compile("-\\d\\d\\d\\d\\." + fileFormat + "$");
+
+			@Override
+			public boolean accept(File dir, String filename) {
+				return filename.startsWith(filePrefix) && p.matcher(filename).find();
+			}
+		});
+
+		if (files == null || files.length == 0)
+			return 1;
+		Arrays.sort(files);
+		String last = files[files.length - 1];
+		int end = last.length() - fileFormat.length() - 1;
+		return Integer.parseInt(last.substring(end - 4, end)) + 1;
+	}
+}
@@ -0,0 +1,120 @@
+package bGLOOP;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/* Publishes the latest GLStatistik of a renderer through JMX, e.g. for
+ * jconsole or VisualVM. Every gib... method of GLStatistik becomes a
+ * read only attribute without the prefix.
+ */
+final class StatisticsMBean implements DynamicMBean {
+	private final static LinkedHashMap<String, Method> ATTRIBUTES = new LinkedHashMap<String, Method>();
+
+	static {
+		for (Method m : GLStatistik.class.getDeclaredMethods())
+			if (m.getName().startsWith("gib") && m.getParameterTypes().length == 0)
+				ATTRIBUTES.put(m.getName().substring(3), m);
+	}
+
+	private final FrameStatistics statistics;
+	private final MBeanInfo info;
+
+	private StatisticsMBean(FrameStatistics pStatistics) {
+		statistics = pStatistics;
+		ArrayList<MBeanAttributeInfo> attrs = new ArrayList<MBeanAttributeInfo>();
+		for (String name : ATTRIBUTES.keySet())
+			attrs.add(new MBeanAttributeInfo(name, ATTRIBUTES.get(name).getReturnType().getName(), name, true,
+					false, false));
+		info = new MBeanInfo(getClass().getName(), "bGLOOP render statistics of the last frame",
+				attrs.toArray(new MBeanAttributeInfo[attrs.size()]), null, new MBeanOperationInfo[0], null);
+	}
+
+	/* Registers the statistics of one renderer. Returns the name to pass
+	 * to unregister or null if registering failed, which is only logged.
+	 */
+	static ObjectName register(FrameStatistics pStatistics, int pRendererId) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName("bGLOOP:type=Statistik,id=" + pRendererId);
+			server.registerMBean(new StatisticsMBean(pStatistics), name);
+			return name;
+		} catch (JMException e) {
+			Logger.getLogger("bGLOOP").log(Level.WARNING, "statistics could not be registered with JMX", e);
+			return null;
+		}
+	}
+
+	static void unregister(ObjectName pName) {
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(pName);
+		} catch (JMException e) {
+			Logger.getLogger("bGLOOP").log(Level.WARNING, "statistics could not be unregistered from JMX", e);
+		}
+	}
+
+	@Override
+	public Object getAttribute(String pName) throws AttributeNotFoundException, ReflectionException {
+		Method m = ATTRIBUTES.get(pName);
+		if (m == null)
+			throw new AttributeNotFoundException(pName);
+		GLStatistik s = statistics.getLatest();
+		if (s == null)
+			return null;
+		try {
+			return m.invoke(s);
+		} catch (IllegalAccessException e) {
+			throw new ReflectionException(e);
+		} catch (InvocationTargetException e) {
+			throw new ReflectionException(e);
+		}
+	}
+
+	@Override
+	public AttributeList getAttributes(String[] pNames) {
+		AttributeList list = new AttributeList();
+		for (String name : pNames)
+			try {
+				list.add(new Attribute(name, getAttribute(name)));
+			} catch (JMException e) {
+				// unknown attributes are left out, as the interface demands
+			}
+		return list;
+	}
+
+	@Override
+	public void setAttribute(Attribute pAttribute) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException(pAttribute.getName() + " is read only");
+	}
+
+	@Override
+	public AttributeList setAttributes(AttributeList pAttributes) {
+		return new AttributeList();
+	}
+
+	@Override
+	public Object invoke(String pAction, Object[] pParams, String[] pSignature) throws ReflectionException {
+		throw new ReflectionException(new NoSuchMethodException(pAction));
+	}
+
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		return info;
+	}
+}
@@ -0,0 +1,125 @@
+package bGLOOP;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+import com.jogamp.common.nio.Buffers;
+import com.jogamp.opengl.GL;
+
+/* The CPU side of a VBO geometry: the interleaved vertices (see Geometry
+ * for the layout) and how to draw them, either as ranges of strips and
+ * fans, as an indexed grid or as indexed triangles. Computing it needs
+ * no GL, so it can run on a worker thread; Geometry.upload only copies it
+ * into buffer objects.
+ */
+final class Tessellation {
+	final FloatBuffer vertices;
+	final int vertexCount;
+	int triangles;
+	int[] firstOffsets, countOffsets;
+	int stripCount;
+	// only for indexed geometries
+	Buffer indices;
+	int indexMode, indexCount, indexType, restartIndex;
+	boolean primitiveRestart;
+
+	Tessellation(int pVertices) {
+		vertexCount = pVertices;
+		vertices = Buffers.newDirectFloatBuffer(pVertices * Geometry.FLOATS_PER_VERTEX);
+	}
+
+	/* The first pStrips ranges are drawn as triangle strips, the remaining
+	 * ones as triangle fans.
+	 */
+	void setRanges(int[] pFirst, int[] pCount, int pStrips) {
+		firstOffsets = pFirst;
+		countOffsets = pCount;
+		stripCount = pStrips;
+		triangles = 0;
+		for (int c : pCount)
+			triangles += Math.max(0, c - 2);
+	}
+
+	/* Draw the vertices as a grid of (pRows + 1) x (pColumns + 1) vertices,
+	 * stored row by row. Every row of quads becomes a triangle strip
+	 * running (r, c), (r + 1, c) for all columns c. The strips are
+	 * separated by the primitive restart index if pRestart is set (GL 3.1
+	 * and later) and joined by degenerate triangles otherwise; as every
+	 * strip has an even length, the winding stays the same. Compared to
+	 * one strip per row in the vertex buffer, every vertex is stored once
+	 * instead of twice and the grid is one draw call.
+	 */
+	void setGridIndices(int pRows, int pColumns, boolean pRestart) {
+		int columns = pColumns + 1, stripLength = 2 * columns;
+		triangles = 2 * pRows * pColumns;
+		indexMode = GL.GL_TRIANGLE_STRIP;
+		primitiveRestart = pRestart;
+		// the largest index is reserved for the restart
+		restartIndex = vertexCount <= 0xFFFF ? 0xFFFF : 0xFFFFFFFF;
+
+		int[] idx = new int[pRows * stripLength + (pRows - 1) * (pRestart ? 1 : 2)];
+		for (int r = 0, n = 0; r < pRows; ++r) {
+			if (r > 0)
+				if (pRestart)
+					idx[n++] = restartIndex;
+				else {
+					// repeat the last vertex of the previous strip and the
+					// first of this one
+					idx[n] = idx[n - 1];
+					idx[n + 1] = r * columns;
+					n += 2;
+				}
+			for (int c = 0; c < columns; ++c) {
+				idx[n++] = r * columns + c;
+				idx[n++] = (r + 1) * columns + c;
+			}
+		}
+		setIndices(idx);
+	}
+
+	/* Draw pIndices as separate triangles. The indices are grouped into
+	 * ranges of pCount[i] indices starting at pFirst[i], which GLMesh
+	 * draws with a material each.
+	 */
+	void setTriangleIndices(int[] pIndices, int[] pFirst, int[] pCount) {
+		indexMode = GL.GL_TRIANGLES;
+		triangles = pIndices.length / 3;
+		firstOffsets = pFirst;
+		countOffsets = pCount;
+		setIndices(pIndices);
+	}
+
+	private void setIndices(int[] pIndices) {
+		indexCount = pIndices.length;
+		if (vertexCount <= 0xFFFF) {
+			indexType = GL.GL_UNSIGNED_SHORT;
+			ShortBuffer b = Buffers.newDirectShortBuffer(indexCount);
+			for (int i : pIndices)
+				b.put((short) i);
+			indices = b.rewind();
+		} else {
+			indexType = GL.GL_UNSIGNED_INT;
+			indices = Buffers.newDirectIntBuffer(indexCount).put(pIndices).rewind();
+		}
+	}
+
+	long vertexBytes() {
+		return (long) vertexCount * Geometry.FLOATS_PER_VERTEX * Buffers.SIZEOF_FLOAT;
+	}
+
+	long indexBytes() {
+		if (indices == null)
+			return 0;
+		return (long) indexCount * indexSize(indexType);
+	}
+
+	static int indexSize(int pIndexType) {
+		return pIndexType == GL.GL_UNSIGNED_SHORT ? Buffers.SIZEOF_SHORT : Buffers.SIZEOF_INT;
+	}
+
+	/* Size of the buffer objects, for the upload budget. */
+	long bytes() {
+		return vertexBytes() + indexBytes();
+	}
+}
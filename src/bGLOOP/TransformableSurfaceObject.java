@@ -1,11 +1,35 @@
 package bGLOOP;
 
+import java.util.logging.Level;
+
 import com.jogamp.opengl.GL2;
 import com.jogamp.opengl.glu.GLU;
 
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
 abstract class TransformableSurfaceObject extends GLBewegbaresObjekt implements IGLSurface, IGLSubdivisable {
+	/* Levels of detail: level 0 is the quality set by the user, every
+	 * further level halves the subdivisions. Each frame the coarsest level
+	 * whose deviation from the exact shape stays below
+	 * WindowConfig.lodPixelError on the screen is drawn. To avoid
+	 * switching back and forth at the threshold, a coarser level is only
+	 * taken if its deviation is below LOD_HYSTERESIS times the threshold.
+	 */
+	final static int LOD_LEVELS = 4;
+	private final static int LOD_MIN_DIVISIONS = 4;
+	private final static float LOD_HYSTERESIS = 0.7f;
+
 	private GLTextur aTex;
-	int bufferName = -1;
+	// display list or VBO, possibly shared with other objects of equal shape
+	private volatile Geometry geometry;
+	// one reference per level of detail that has been drawn since the
+	// last change of the shape; geometry is one of them
+	private final Geometry[] levels;
+	// lodError of every level, for the current shape
+	private float[] lodErrors;
+	// only changed while holding the lock, see updateGeometry
+	int lodLevel = 0;
 
 	TransformableSurfaceObject() {
 		this(null);
@@ -14,6 +38,7 @@ abstract class TransformableSurfaceObject extends GLBewegbaresObjekt implements
 	TransformableSurfaceObject(GLTextur pTex) {
 		super();
 		aTex = (pTex == null ? GLTextur.NULL_TEXTURE : pTex);
+		levels = new Geometry[wconf.levelOfDetail && hasLevelsOfDetail() ? LOD_LEVELS : 1];
 		associatedRenderer.addObjectToRenderMap(aTex, this);
 	}
 
@@ -64,61 +89,217 @@ abstract class TransformableSurfaceObject extends GLBewegbaresObjekt implements
 		scheduleRender();
 	}
 
+	/* The following methods only emit the geometry, the display list
+	 * itself is created by compileDisplayList.
+	 */
 	abstract void generateDisplayList_GL(GL2 gl);
 
 	abstract void generateDisplayList_GLU(GL2 gl, GLU glu);
 
-	abstract void generateVBO(GL2 gl);
+	/* Computes the VBO geometry of the current shape without GL, on the
+	 * GL thread. Shared shapes are tessellated through tessellateFor.
+	 */
+	abstract Tessellation tessellate();
+
+	void generateVBO(GL2 gl, Geometry g) {
+		g.upload(gl, tessellate());
+	}
+
+	/* Runs on the tessellation pool without the object's lock, so the
+	 * shape may change meanwhile. The geometry must therefore only depend
+	 * on pKey, which was taken under the lock. Shapes whose tessellation
+	 * reads any of their fields override this.
+	 */
+	Tessellation tessellateFor(GeometryCache.Key pKey) {
+		return tessellate();
+	}
+
+	/* Key under which the geometry of this object is shared, or null if
+	 * it must not be shared with other objects.
+	 */
+	abstract GeometryCache.Key geometryKey();
+
+	/* Shapes whose tessellation uses lodDivisions override this and
+	 * lodError.
+	 */
+	boolean hasLevelsOfDetail() {
+		return false;
+	}
+
+	/* Largest distance between the tessellation at level pLevel and the
+	 * exact shape, in object coordinates.
+	 */
+	double lodError(int pLevel) {
+		return 0;
+	}
+
+	/* The subdivisions to use at the current level of detail for a full
+	 * quality of pFull.
+	 */
+	int lodDivisions(int pFull) {
+		return lodDivisions(pFull, lodLevel);
+	}
+
+	static int lodDivisions(int pFull, int pLevel) {
+		return pLevel == 0 ? pFull : max(pFull >> pLevel, min(pFull, LOD_MIN_DIVISIONS));
+	}
+
+	/* Distance between the middle of an edge and the circle of radius
+	 * pRadius divided into pDivisions edges.
+	 */
+	static double chordError(double pRadius, int pDivisions) {
+		return pRadius * (1 - Math.cos(Math.PI / max(pDivisions, 1)));
+	}
+
+	/* Called on the GL thread before the geometry is updated. */
+	private void chooseLevelOfDetail() {
+		float[] errors = lodErrors, eye;
+		float dx, dy, dz, dist, threshold = wconf.lodPixelError;
+		float pixels = associatedRenderer.getPixelsPerUnit();
+		int level = lodLevel;
+
+		if (errors == null || needsRedraw) {
+			errors = new float[LOD_LEVELS];
+			for (int i = 0; i < LOD_LEVELS; ++i)
+				errors[i] = (float) lodError(i);
+			lodErrors = errors;
+		}
+		// the bounds of this frame, see GLBewegbaresObjekt.updateBounds
+		if (boundsRadius < 0)
+			return;
+		eye = associatedRenderer.getViewEye();
+		dx = boundsCenter[0] - eye[0];
+		dy = boundsCenter[1] - eye[1];
+		dz = boundsCenter[2] - eye[2];
+		// distance to the nearest point of the bounding sphere
+		dist = (float) Math.sqrt(dx * dx + dy * dy + dz * dz) - boundsRadius;
+
+		// no viewport yet, or the camera is inside the object
+		if (pixels == 0 || dist <= 0)
+			level = 0;
+		else {
+			// pixels on the screen per unit of the object's coordinates
+			pixels *= boundsScale / dist;
+			while (level > 0 && errors[level] * pixels > threshold)
+				level--;
+			// levels with the same error have already reached the minimum
+			while (level + 1 < LOD_LEVELS && errors[level + 1] > errors[level]
+					&& errors[level + 1] * pixels <= LOD_HYSTERESIS * threshold)
+				level++;
+		}
+		if (level != lodLevel)
+			synchronized (this) {
+				lodLevel = level;
+			}
+	}
 
-	abstract void drawVBO(GL2 gl);
+	@Override
+	int geometryId() {
+		Geometry g = geometry;
+		return g == null ? 0 : g.sortId;
+	}
+
+	void compileDisplayList(GL2 gl, GLU glu, Geometry g, boolean pUseGLU) {
+		g.displayList = true;
+		g.bufferName = gl.glGenLists(1);
+		gl.glNewList(g.bufferName, GL2.GL_COMPILE);
+		if (pUseGLU)
+			generateDisplayList_GLU(gl, glu);
+		else
+			generateDisplayList_GL(gl);
+		gl.glEndList();
+	}
 
 	@Override
 	void renderDelegate(GL2 gl, GLU glu) {
 		// now transform the object accordingly
-		synchronized (this) {
-			gl.glMultMatrixf(transformationMatrix.getMatrix(), 0);
-		}
-		if (needsRedraw) {
-			log.info("redrawing " + getClass().getName() + ":" + hashCode() );
-
-			switch (conf.objectRenderMode) {
-			case RENDER_GLU:
-			case RENDER_GL:
-				if (bufferName != -1)
-					gl.glDeleteLists(bufferName, 1);
-
-				bufferName = gl.glGenLists(1);
-				if (conf.objectRenderMode == Rendermodus.RENDER_GL)
-					generateDisplayList_GL(gl);
-				else
-					generateDisplayList_GLU(gl, glu);
-				break;
-			case RENDER_VBOGL:
-				generateVBO(gl);
-				break;
+		gl.glMultMatrixf(renderMatrix, 0);
+		if (levels.length > 1)
+			chooseLevelOfDetail();
+		if (needsRedraw || geometry != levels[lodLevel])
+			updateGeometry(gl, glu);
+
+		Geometry g = geometry;
+		if (g == null)
+			return;
+		if (log.isLoggable(Level.FINE))
+			log.fine("rendering " + getClass().getName() + ":" + hashCode() );
+		drawGeometry(gl, g);
+	}
+
+	void drawGeometry(GL2 gl, Geometry g) {
+		g.draw(gl, associatedRenderer.getStateCache());
+	}
+
+	/* After a change of the shape the geometries of all levels are
+	 * outdated. Otherwise only the level of detail has changed, and its
+	 * geometry may still be kept from an earlier frame.
+	 */
+	private void updateGeometry(GL2 gl, GLU glu) {
+		GeometryCache cache = associatedRenderer.getGeometryCache();
+		boolean shapeChanged = needsRedraw;
+		int level = lodLevel;
+		Geometry g = shapeChanged ? null : levels[level];
+
+		if (g == null) {
+			GeometryCache.Key key;
+			// a consistent copy of the shape, tessellateFor only reads this
+			synchronized (this) {
+				key = geometryKey();
 			}
+			// take the new reference before dropping the old ones, the key
+			// might not have changed
+			g = cache.acquire(key);
 
-			needsRedraw = false;
+			if (g == null && key != null && conf.objectRenderMode == Rendermodus.RENDER_VBOGL) {
+				// tessellated on the pool; until the result is uploaded, the
+				// old geometry keeps being drawn
+				g = cache.acquireTessellated(gl, this, key);
+				if (g == null)
+					return;
+			} else if (g == null) {
+				log.info("redrawing " + getClass().getName() + ":" + hashCode() );
+				// generating a VBO changes the buffer binding
+				associatedRenderer.getStateCache().unbindGeometry();
+				g = new Geometry(key);
+				switch (conf.objectRenderMode) {
+				case RENDER_GLU:
+				case RENDER_GL:
+					compileDisplayList(gl, glu, g, conf.objectRenderMode == Rendermodus.RENDER_GLU);
+					break;
+				case RENDER_VBOGL:
+					generateVBO(gl, g);
+					break;
+				}
+				cache.register(g);
+			}
 		}
-		if(associatedRenderer.selectionRun)
-			gl.glPushName(selectionID);
-
-		log.fine("rendering " + getClass().getName() + ":" + hashCode() );
-		switch (conf.objectRenderMode) {
-		case RENDER_GL:
-		case RENDER_GLU:
-			gl.glCallList(bufferName);
-			break;
-		case RENDER_VBOGL:
-			drawVBO(gl);
-			break;
+		if (shapeChanged) {
+			for (int i = 0; i < levels.length; ++i)
+				if (levels[i] != null) {
+					cache.release(gl, levels[i]);
+					levels[i] = null;
+				}
+			needsRedraw = false;
+			// the shape parameters may have changed along with the geometry
+			synchronized (this) {
+				invalidateBounds();
+			}
 		}
-
+		levels[level] = g;
+		geometry = g;
 	}
 
 	@Override
 	public synchronized void loesche() {
 		associatedRenderer.removeObjectFromRenderMap(aTex, this);
+		needsRedraw = false;
+		for (int i = 0; i < levels.length; ++i)
+			if (levels[i] != null) {
+				associatedRenderer.getGeometryCache().releaseLater(levels[i]);
+				levels[i] = null;
+			}
+		geometry = null;
 		scheduleRender();
 	}
 }
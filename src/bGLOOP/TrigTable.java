@@ -0,0 +1,49 @@
+package bGLOOP;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/* Sine and cosine of the angles k * 2 pi / n for a circle divided into n
+ * steps. The tessellators take their angles from these tables instead of
+ * calling Math.sin and Math.cos per vertex. Tables are immutable and
+ * cached per n, so all objects of the same quality share one.
+ *
+ * Angles in between the steps of n are steps of a finer table: a half
+ * circle in n steps is of(2 * n) up to index n, the midpoints between
+ * the corners of an n-gon are the odd indices of of(2 * n). Indices wrap
+ * around, so index n is exactly the angle 0 again and closed rings meet
+ * without a seam.
+ */
+final class TrigTable {
+	private final static ConcurrentHashMap<Integer, TrigTable> tables = new ConcurrentHashMap<Integer, TrigTable>();
+
+	final int divisions;
+	private final double[] sin, cos;
+
+	private TrigTable(int pDivisions) {
+		divisions = pDivisions;
+		sin = new double[pDivisions];
+		cos = new double[pDivisions];
+		for (int k = 0; k < pDivisions; ++k) {
+			double a = 2 * Math.PI * k / pDivisions;
+			sin[k] = Math.sin(a);
+			cos[k] = Math.cos(a);
+		}
+	}
+
+	static TrigTable of(int pDivisions) {
+		if (pDivisions < 1)
+			throw new IllegalArgumentException("Die Anzahl der Unterteilungen muss mindestens 1 sein!");
+		TrigTable t = tables.get(pDivisions);
+		return t != null ? t : tables.computeIfAbsent(pDivisions, TrigTable::new);
+	}
+
+	/* sin(k * 2 pi / n) for k >= 0 */
+	double sin(int k) {
+		return sin[k % divisions];
+	}
+
+	/* cos(k * 2 pi / n) for k >= 0 */
+	double cos(int k) {
+		return cos[k % divisions];
+	}
+}
@@ -51,7 +51,13 @@ class WindowConfig {
 	// boolean aDrawRotAxis = false;
 	Rendermodus globalObjectRenderMode = Rendermodus.RENDER_GLU;
 	boolean globalLighting = true, aDisplayAxes = false, aWireframe = false,
-			doubleBuffering = true, aDrawLookAt = false;
+			doubleBuffering = true, aDrawLookAt = false, frustumCulling = true,
+			renderOnDemand = false, jmxStatistics = false, levelOfDetail = true;
+	int maxFPS = 0;
+	// KB of VBO data uploaded per frame at most, 0 for no limit
+	int vboUploadBudget = 4096;
+	// largest deviation in pixels of a coarser level of detail
+	float lodPixelError = 1;
 
 	long clickTimeRange, moveTimeRange;
 	String screenshotFormat, screenshotPrefix;
@@ -133,10 +139,45 @@ class WindowConfig {
 			doubleBuffering = true;
 		else
 			doubleBuffering = false;
+		// on unless switched off explicitly
+		frustumCulling = !"off".equals(bgloopSetting.getProperty("FRUSTUM_CULLING"));
+		renderOnDemand = "on".equals(bgloopSetting.getProperty("RENDER_ON_DEMAND"));
+		jmxStatistics = "on".equals(bgloopSetting.getProperty("JMX_STATISTICS"));
+		levelOfDetail = !"off".equals(bgloopSetting.getProperty("LEVEL_OF_DETAIL"));
+		lodPixelError = floatSetting("LOD_MAX_PIXEL_ERROR", lodPixelError);
+		maxFPS = intSetting("MAX_FPS", maxFPS);
+		vboUploadBudget = intSetting("VBO_UPLOAD_BUDGET", vboUploadBudget);
 		screenshotFormat = bgloopSetting.getProperty("SCREENSHOT_FILE_FORMAT");
 		screenshotPrefix = bgloopSetting.getProperty("SCREENSHOT_FILE_PREFIX");
 	}
 
+	/* Optional numeric settings: a missing or malformed value keeps the
+	 * default, the latter with a warning.
+	 */
+	private int intSetting(String pKey, int pDefault) {
+		String v = bgloopSetting.getProperty(pKey);
+		if (v == null)
+			return pDefault;
+		try {
+			return Integer.parseInt(v.trim());
+		} catch (NumberFormatException e) {
+			log.warning(pKey + "=" + v + " is not a number, using " + pDefault);
+			return pDefault;
+		}
+	}
+
+	private float floatSetting(String pKey, float pDefault) {
+		String v = bgloopSetting.getProperty(pKey);
+		if (v == null)
+			return pDefault;
+		try {
+			return Float.parseFloat(v.trim());
+		} catch (NumberFormatException e) {
+			log.warning(pKey + "=" + v + " is not a number, using " + pDefault);
+			return pDefault;
+		}
+	}
+
 	boolean isAWT() {
 		return "AWT".equals(bgloopSetting.getProperty("DEFAULT_WINDOW_MODE"));
 	}
@@ -145,4 +186,8 @@ class WindowConfig {
 		return "NEWT".equals(bgloopSetting.getProperty("DEFAULT_WINDOW_MODE"));
 	}
 
+	boolean isOffscreen() {
+		return "OFFSCREEN".equals(bgloopSetting.getProperty("DEFAULT_WINDOW_MODE"));
+	}
+
 }
@@ -60,7 +60,7 @@ public class BuilderPOJOs {
 
 	public static class FaceVertex {
 
-	    int index = -1;
+	    public int index = -1;
 	    public VertexGeometric v = null;
 	    public VertexTexture t = null;
 	    public VertexNormal n = null;
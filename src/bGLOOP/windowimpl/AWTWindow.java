@@ -8,7 +8,7 @@ import com.jogamp.newt.event.awt.AWTKeyAdapter;
 import com.jogamp.newt.event.awt.AWTMouseAdapter;
 import com.jogamp.opengl.GLCapabilities;
 import com.jogamp.opengl.awt.GLCanvas;
-import com.jogamp.opengl.util.Animator;
+import com.jogamp.opengl.util.AnimatorBase;
 
 import bGLOOP.windowimpl.listener.KeyboardListener;
 import bGLOOP.windowimpl.listener.KeyboardListenerFacade;
@@ -21,12 +21,12 @@ final public class AWTWindow extends Window {
 
 	@Override
 	public Object createWindow(GLCapabilities caps, int width, int height) {
-		final Animator animator;
+		final AnimatorBase animator;
 
 		frame = new Frame("bGLOOP");
 		setAutoDrawable(canvas = new GLCanvas(caps));
 
-		setAnimator(animator = new Animator(canvas));
+		setAnimator(animator = createAnimator(canvas));
 		frame.setSize(width, height);
 		frame.add(canvas);
 
@@ -46,7 +46,7 @@ final public class AWTWindow extends Window {
 
 				// prevent jogl babbling about unimportant stuff
 				System.err.close();
-				System.exit(0);				
+				exit();
 			}
 		});
 		return frame;
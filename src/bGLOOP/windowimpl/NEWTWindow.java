@@ -6,7 +6,7 @@ import com.jogamp.newt.event.WindowAdapter;
 import com.jogamp.newt.event.WindowEvent;
 import com.jogamp.newt.opengl.GLWindow;
 import com.jogamp.opengl.GLCapabilities;
-import com.jogamp.opengl.util.Animator;
+import com.jogamp.opengl.util.AnimatorBase;
 
 import bGLOOP.windowimpl.listener.KeyboardListener;
 import bGLOOP.windowimpl.listener.KeyboardListenerFacade;
@@ -18,9 +18,9 @@ final public class NEWTWindow extends Window {
 
 	@Override
 	public Object createWindow(GLCapabilities caps, int width, int height) {
-		final Animator animator;
+		final AnimatorBase animator;
 		setAutoDrawable(glWin = GLWindow.create(caps));
-		setAnimator(animator = new Animator(glWin));
+		setAnimator(animator = createAnimator(glWin));
 		glWin.addWindowListener(new WindowAdapter() {
 			@Override
 			public void windowDestroyNotify(WindowEvent e) {
@@ -28,7 +28,7 @@ final public class NEWTWindow extends Window {
 				glWin.setVisible(false);
 				// prevent jogl babbling about unimportant stuff
 				System.err.close();
-				System.exit(0);
+				exit();
 			}
 		});
 
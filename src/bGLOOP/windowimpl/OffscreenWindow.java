@@ -0,0 +1,70 @@
+package bGLOOP.windowimpl;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jogamp.opengl.GLCapabilities;
+import com.jogamp.opengl.GLDrawableFactory;
+import com.jogamp.opengl.GLOffscreenAutoDrawable;
+
+import bGLOOP.windowimpl.listener.KeyboardListenerFacade;
+import bGLOOP.windowimpl.listener.MouseListenerFacade;
+
+/* Renders into an offscreen drawable (FBO or pbuffer, whatever the
+ * driver supports) instead of a window, so bGLOOP also runs on machines
+ * without a display, e.g. with Mesa's llvmpipe on a build server. There
+ * is no mouse or keyboard input; the scene can only be observed through
+ * screenshots.
+ */
+final public class OffscreenWindow extends Window {
+	private final static Logger log = Logger.getLogger("bGLOOP");
+	private GLOffscreenAutoDrawable drawable;
+
+	@Override
+	public Object createWindow(GLCapabilities caps, int width, int height) {
+		caps.setOnscreen(false);
+		drawable = GLDrawableFactory.getFactory(caps.getGLProfile()).createOffscreenAutoDrawable(null, caps, null,
+				width, height);
+		setAutoDrawable(drawable);
+		setAnimator(createAnimator(drawable));
+		log.info("Rendering offscreen, " + width + "x" + height);
+		return drawable;
+	}
+
+	@Override
+	public void addMouseListener(MouseListenerFacade mhl) {
+	}
+
+	@Override
+	public void addKeyboardListener(KeyboardListenerFacade kpl) {
+	}
+
+	@Override
+	public void setDecoration(boolean pDecorate) {
+	}
+
+	@Override
+	public void setFullscreen(boolean pFullscreen) {
+	}
+
+	@Override
+	public void toggleFullscreen() {
+	}
+
+	@Override
+	public void startDisplay() {
+	}
+
+	@Override
+	public void closeDisplay() {
+		getAnimator().stop();
+		drawable.destroy();
+		exit();
+	}
+
+	@Override
+	public void updateFPS(float lastFPS) {
+		if (log.isLoggable(Level.FINE))
+			log.fine("bGLOOP.OFFSCREEN, FPS: " + lastFPS);
+	}
+}
@@ -3,16 +3,26 @@ package bGLOOP.windowimpl;
 import com.jogamp.opengl.GLAutoDrawable;
 import com.jogamp.opengl.GLCapabilities;
 import com.jogamp.opengl.util.Animator;
+import com.jogamp.opengl.util.AnimatorBase;
+import com.jogamp.opengl.util.FPSAnimator;
 
 import bGLOOP.windowimpl.listener.KeyboardListenerFacade;
 import bGLOOP.windowimpl.listener.MouseListenerFacade;
 
 public abstract class Window {
 	private GLAutoDrawable adraw;
-	private Animator animator;
+	private AnimatorBase animator;
+	private int maxFPS = 0;
+	private Runnable exitAction;
 
 	public static Window createWindowFactory(boolean asAWT) {
-		if(asAWT)
+		return createWindowFactory(asAWT, false);
+	}
+
+	public static Window createWindowFactory(boolean asAWT, boolean offscreen) {
+		if(offscreen)
+			return new OffscreenWindow();
+		else if(asAWT)
 			return new AWTWindow();
 		else
 			return new NEWTWindow();
@@ -36,14 +46,40 @@ public abstract class Window {
 
 	public abstract void closeDisplay();
 
-	public Animator getAnimator() {
+	public AnimatorBase getAnimator() {
 		return animator;
 	}
 
-	public void setAnimator(Animator animator) {
+	public void setAnimator(AnimatorBase animator) {
 		this.animator = animator;
 	}
 
+	/* Limits the frame rate of the animator created by createWindow,
+	 * 0 means unlimited.
+	 */
+	public void setMaxFPS(int pMaxFPS) {
+		maxFPS = pMaxFPS;
+	}
+
+	/* Runs before the window ends the JVM, to finish work that would be
+	 * lost otherwise.
+	 */
+	public void setExitAction(Runnable pAction) {
+		exitAction = pAction;
+	}
+
+	protected void exit() {
+		if (exitAction != null)
+			exitAction.run();
+		System.exit(0);
+	}
+
+	protected AnimatorBase createAnimator(GLAutoDrawable pDrawable) {
+		if (maxFPS > 0)
+			return new FPSAnimator(pDrawable, maxFPS, true);
+		return new Animator(pDrawable);
+	}
+
 	public GLAutoDrawable getAutoDrawable() {
 		return adraw;
 	}